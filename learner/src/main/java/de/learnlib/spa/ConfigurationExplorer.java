@@ -0,0 +1,600 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.impl.AbstractCompactSPA;
+import de.learnlib.spa.impl.CompactSPA;
+
+/**
+ * An explorer for the configuration space of an SPA, bounded by the length of the input and the nesting depth of
+ * invocations.
+ * <p>
+ * A configuration consists of the current procedure, its current state and the call stack, where each stack element
+ * stores the calling procedure together with the state in which it continues after the invocation has returned. Call
+ * stacks are hash-consed: each stack is identified by an int id and stored as a (parent stack id, top element) pair,
+ * so that stacks sharing a common suffix share their representation. A configuration is therefore packed into a single
+ * {@code long} (stack id, global state index), and the set of visited configurations is a primitive hash set of such
+ * values.
+ * <p>
+ * The exploration is a breadth-first search, where the frontier of each level is split into chunks that are expanded
+ * concurrently. The visited set and the stack table are striped into independently locked segments. The number of
+ * stored configurations (and therefore the memory consumption of roughly 40 bytes per configuration) is bounded by a
+ * given budget.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class ConfigurationExplorer<I> {
+
+    private static final int NUM_SEGMENTS = 64;
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int MIN_CHUNK_SIZE = 1024;
+
+    private static final int EMPTY_STACK = 0;
+    private static final long EMPTY_KEY = -1;
+
+    private final AbstractCompactSPA<I> spa;
+    private final Executor executor;
+    private final int parallelism;
+
+    private final int numInternals;
+    private final int numInputs;
+
+    // global state indices
+    private final int[] procedureOffsets;
+    private final int[] procedureOfState;
+
+    public ConfigurationExplorer(SPA<?, I> spa) {
+        this(spa, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param spa
+     *         the SPA whose configurations should be explored
+     * @param executor
+     *         the executor for expanding the frontier
+     * @param parallelism
+     *         the (maximum) number of chunks into which each frontier is split
+     */
+    public ConfigurationExplorer(SPA<?, I> spa, Executor executor, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+
+        this.spa = CompactSPA.of(spa);
+        this.executor = executor;
+        this.parallelism = parallelism;
+
+        this.numInternals = this.spa.getNumInternals();
+        this.numInputs = this.spa.getNumProceduralInputs();
+
+        final int numIds = this.spa.getNumProcedureIds();
+        this.procedureOffsets = new int[numIds + 1];
+
+        for (int p = 0; p < numIds; p++) {
+            this.procedureOffsets[p + 1] = this.procedureOffsets[p] + this.spa.getNumStates(p);
+        }
+
+        this.procedureOfState = new int[this.procedureOffsets[numIds]];
+
+        for (int p = 0; p < numIds; p++) {
+            Arrays.fill(this.procedureOfState, this.procedureOffsets[p], this.procedureOffsets[p + 1], p);
+        }
+    }
+
+    /**
+     * Explores all configurations that are reachable by words of at most the given length, without exceeding the given
+     * nesting depth.
+     *
+     * @param maxLength
+     *         the maximum length of the input
+     * @param maxDepth
+     *         the maximum number of simultaneously active invocations
+     * @param maxConfigurations
+     *         the maximum number of configurations to store
+     * @param target
+     *         an (optional) predicate for configurations, whose first satisfying configuration stops the exploration
+     *
+     * @return the result of the exploration
+     */
+    public Result explore(int maxLength, int maxDepth, long maxConfigurations, @Nullable Target<I> target) {
+        if (maxLength < 0 || maxDepth <= 0 || maxConfigurations <= 0) {
+            throw new IllegalArgumentException("Bounds must be positive");
+        }
+
+        final Exploration exploration = new Exploration(maxDepth, maxConfigurations, target);
+        final int initialId = spa.getInitialProcedureId();
+
+        // the initial configuration (before the initial call) is not stored explicitly
+        if (initialId < 0 || maxLength == 0 || spa.getIntInitialState(initialId) < 0) {
+            return exploration.toResult(0);
+        }
+
+        final long initialConfiguration =
+                pack(EMPTY_STACK, procedureOffsets[initialId] + spa.getIntInitialState(initialId));
+        exploration.visit(initialConfiguration);
+
+        if (exploration.checkTarget(initialConfiguration, EMPTY_STACK)) {
+            return exploration.toResult(1);
+        }
+
+        long[] frontier = {initialConfiguration};
+        int length = 1;
+
+        while (length < maxLength && frontier.length > 0 && !exploration.isStopped()) {
+            frontier = exploration.expand(frontier);
+            length++;
+        }
+
+        return exploration.toResult(length);
+    }
+
+    private static long pack(int stack, int globalState) {
+        return ((long) stack << 32) | globalState;
+    }
+
+    private static int getStack(long configuration) {
+        return (int) (configuration >>> 32);
+    }
+
+    private static int getGlobalState(long configuration) {
+        return (int) configuration;
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * A predicate for configurations.
+     *
+     * @param <I>
+     *         input symbol type
+     */
+    @FunctionalInterface
+    public interface Target<I> {
+
+        /**
+         * Tests the given configuration.
+         *
+         * @param procedure
+         *         the call symbol of the current procedure
+         * @param state
+         *         the (int) state of the current procedure, see {@link AbstractCompactSPA}
+         * @param depth
+         *         the number of active invocations
+         *
+         * @return {@code true} if the configuration satisfies this predicate, {@code false} otherwise
+         */
+        boolean test(I procedure, int state, int depth);
+    }
+
+    /**
+     * The result of an exploration.
+     */
+    public static final class Result {
+
+        private final long numConfigurations;
+        private final int numStacks;
+        private final int exploredLength;
+        private final boolean acceptingReachable;
+        private final boolean targetReached;
+        private final boolean truncated;
+
+        Result(long numConfigurations,
+               int numStacks,
+               int exploredLength,
+               boolean acceptingReachable,
+               boolean targetReached,
+               boolean truncated) {
+            this.numConfigurations = numConfigurations;
+            this.numStacks = numStacks;
+            this.exploredLength = exploredLength;
+            this.acceptingReachable = acceptingReachable;
+            this.targetReached = targetReached;
+            this.truncated = truncated;
+        }
+
+        /**
+         * Returns the number of visited configurations (excluding the initial and the terminated configuration).
+         */
+        public long getNumConfigurations() {
+            return numConfigurations;
+        }
+
+        /**
+         * Returns the number of distinct (non-empty) call stacks.
+         */
+        public int getNumStacks() {
+            return numStacks;
+        }
+
+        /**
+         * Returns the length of the words up to which all configurations have been explored. If the exploration
+         * stopped at a target, this is the length of the shortest word reaching a target configuration.
+         */
+        public int getExploredLength() {
+            return exploredLength;
+        }
+
+        /**
+         * Returns whether an accepted word has been found within the explored length.
+         */
+        public boolean isAcceptingReachable() {
+            return acceptingReachable;
+        }
+
+        public boolean isTargetReached() {
+            return targetReached;
+        }
+
+        /**
+         * Returns whether the exploration stopped because the configuration budget has been exceeded.
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{configurations=" + numConfigurations + ", stacks=" + numStacks + ", length=" +
+                   exploredLength + ", accepting=" + acceptingReachable + ", target=" + targetReached +
+                   ", truncated=" + truncated + '}';
+        }
+    }
+
+    /**
+     * The state of a single exploration.
+     */
+    private final class Exploration {
+
+        private final int maxDepth;
+        private final long maxConfigurations;
+        private final Target<I> target;
+
+        private final LongSet visited = new LongSet();
+        private final AtomicLong numConfigurations = new AtomicLong();
+
+        // hash-consed stacks: id -> (parent, global continuation state, depth), stored in pages
+        private final LongSet stackIndex = new LongSet();
+        private final int[][] stackParents = new int[1 << 10][];
+        private final int[][] stackStates = new int[1 << 10][];
+        private final int[][] stackDepths = new int[1 << 10][];
+        private final AtomicInteger numStacks = new AtomicInteger(1); // the empty stack
+
+        private final AtomicBoolean acceptingReachable = new AtomicBoolean();
+        private final AtomicBoolean targetReached = new AtomicBoolean();
+        private final AtomicBoolean truncated = new AtomicBoolean();
+
+        Exploration(int maxDepth, long maxConfigurations, @Nullable Target<I> target) {
+            this.maxDepth = maxDepth;
+            this.maxConfigurations = maxConfigurations;
+            this.target = target;
+        }
+
+        boolean isStopped() {
+            return targetReached.get() || truncated.get();
+        }
+
+        Result toResult(int length) {
+            return new Result(numConfigurations.get(),
+                              numStacks.get() - 1,
+                              length,
+                              acceptingReachable.get(),
+                              targetReached.get(),
+                              truncated.get());
+        }
+
+        long[] expand(long[] frontier) {
+            final int numChunks = Math.max(1, Math.min(parallelism, frontier.length / MIN_CHUNK_SIZE));
+            final int chunkSize = (frontier.length + numChunks - 1) / numChunks;
+            final List<CompletableFuture<LongList>> futures = new ArrayList<>(numChunks);
+
+            for (int i = 0; i < frontier.length; i += chunkSize) {
+                final int from = i;
+                final int to = Math.min(frontier.length, i + chunkSize);
+                futures.add(CompletableFuture.supplyAsync(() -> expand(frontier, from, to), executor));
+            }
+
+            final LongList next = new LongList();
+            for (final CompletableFuture<LongList> f : futures) {
+                next.addAll(f.join());
+            }
+
+            return next.toArray();
+        }
+
+        private LongList expand(long[] frontier, int from, int to) {
+            final LongList result = new LongList();
+
+            for (int i = from; i < to && !isStopped(); i++) {
+                final long configuration = frontier[i];
+                final int stack = getStack(configuration);
+                final int globalState = getGlobalState(configuration);
+                final int procedure = procedureOfState[globalState];
+                final int state = globalState - procedureOffsets[procedure];
+
+                // internal transitions
+                for (int code = 0; code < numInternals; code++) {
+                    final int succ = spa.getIntSuccessor(procedure, state, code);
+                    if (succ >= 0) {
+                        offer(pack(stack, procedureOffsets[procedure] + succ), stack, result);
+                    }
+                }
+
+                // call transitions
+                final int depth = getDepth(stack) + 1;
+                if (depth < maxDepth) {
+                    for (int code = numInternals; code < numInputs; code++) {
+                        final int callee = code - numInternals;
+                        final int calleeInit = spa.getIntInitialState(callee);
+                        final int continuation = spa.getIntSuccessor(procedure, state, code);
+
+                        if (calleeInit >= 0 && continuation >= 0) {
+                            final int newStack = push(stack, procedureOffsets[procedure] + continuation, depth);
+                            if (newStack >= 0) {
+                                offer(pack(newStack, procedureOffsets[callee] + calleeInit), newStack, result);
+                            }
+                        }
+                    }
+                }
+
+                // return transition
+                if (spa.isIntAccepting(procedure, state)) {
+                    if (stack == EMPTY_STACK) {
+                        acceptingReachable.set(true);
+                    } else {
+                        final int parent = getPage(stackParents, stack);
+                        offer(pack(parent, getPage(stackStates, stack)), parent, result);
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        private void offer(long configuration, int stack, LongList frontier) {
+            if (visit(configuration)) {
+                frontier.add(configuration);
+                if (checkTarget(configuration, stack)) {
+                    targetReached.set(true);
+                }
+            }
+        }
+
+        boolean visit(long configuration) {
+            if (numConfigurations.get() >= maxConfigurations) {
+                if (!visited.contains(configuration)) {
+                    truncated.set(true);
+                }
+                return false;
+            }
+
+            if (visited.add(configuration)) {
+                numConfigurations.incrementAndGet();
+                return true;
+            }
+
+            return false;
+        }
+
+        boolean checkTarget(long configuration, int stack) {
+            if (target == null) {
+                return false;
+            }
+
+            final int globalState = getGlobalState(configuration);
+            final int procedure = procedureOfState[globalState];
+
+            return target.test(spa.getInputAlphabet().getCallSymbol(procedure),
+                               globalState - procedureOffsets[procedure],
+                               getDepth(stack) + 1);
+        }
+
+        private int getDepth(int stack) {
+            return stack == EMPTY_STACK ? 0 : getPage(stackDepths, stack);
+        }
+
+        /**
+         * Returns the id of the stack consisting of the given parent stack and the given top element, or {@code -1} if
+         * the stack budget is exhausted.
+         */
+        private int push(int parent, int globalState, int depth) {
+            final long key = pack(parent, globalState);
+            final LongSet.Segment segment = stackIndex.getSegment(key);
+
+            synchronized (segment) {
+                final int existing = segment.get(key);
+                if (existing >= 0) {
+                    return existing;
+                }
+
+                // stacks are bounded by the configurations that use them. Allocate the id first, so that concurrent
+                // pushes (of other segments) cannot exceed the bound
+                final int id = numStacks.getAndIncrement();
+                if (id >= maxConfigurations || id >> PAGE_BITS >= stackParents.length) {
+                    numStacks.decrementAndGet();
+                    truncated.set(true);
+                    return -1;
+                }
+
+                setPage(stackParents, id, parent);
+                setPage(stackStates, id, globalState);
+                setPage(stackDepths, id, depth);
+                segment.put(key, id);
+                return id;
+            }
+        }
+
+        private int getPage(int[][] pages, int id) {
+            return pages[id >>> PAGE_BITS][id & (PAGE_SIZE - 1)];
+        }
+
+        private void setPage(int[][] pages, int id, int value) {
+            final int page = id >>> PAGE_BITS;
+            if (pages[page] == null) {
+                synchronized (pages) {
+                    if (pages[page] == null) {
+                        pages[page] = new int[PAGE_SIZE];
+                    }
+                }
+            }
+            pages[page][id & (PAGE_SIZE - 1)] = value;
+        }
+    }
+
+    /**
+     * A hash set (or map to non-negative int values) of non-negative longs, striped into independently locked
+     * segments with open addressing.
+     */
+    private static final class LongSet {
+
+        private final Segment[] segments = new Segment[NUM_SEGMENTS];
+
+        LongSet() {
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = new Segment();
+            }
+        }
+
+        Segment getSegment(long key) {
+            return segments[hash(key) & (NUM_SEGMENTS - 1)];
+        }
+
+        boolean add(long key) {
+            final Segment segment = getSegment(key);
+            synchronized (segment) {
+                if (segment.get(key) >= 0) {
+                    return false;
+                }
+                segment.put(key, 0);
+                return true;
+            }
+        }
+
+        boolean contains(long key) {
+            final Segment segment = getSegment(key);
+            synchronized (segment) {
+                return segment.get(key) >= 0;
+            }
+        }
+
+        private static final class Segment {
+
+            private long[] keys = newKeys(16);
+            private int[] values = new int[16];
+            private int size;
+
+            int get(long key) {
+                final int mask = keys.length - 1;
+                int idx = (hash(key) >>> 6) & mask;
+
+                while (keys[idx] != EMPTY_KEY) {
+                    if (keys[idx] == key) {
+                        return values[idx];
+                    }
+                    idx = (idx + 1) & mask;
+                }
+
+                return -1;
+            }
+
+            void put(long key, int value) {
+                if (2 * (size + 1) > keys.length) {
+                    rehash();
+                }
+
+                final int mask = keys.length - 1;
+                int idx = (hash(key) >>> 6) & mask;
+
+                while (keys[idx] != EMPTY_KEY) {
+                    idx = (idx + 1) & mask;
+                }
+
+                keys[idx] = key;
+                values[idx] = value;
+                size++;
+            }
+
+            private void rehash() {
+                final long[] oldKeys = keys;
+                final int[] oldValues = values;
+
+                keys = newKeys(oldKeys.length * 2);
+                values = new int[oldKeys.length * 2];
+                size = 0;
+
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != EMPTY_KEY) {
+                        put(oldKeys[i], oldValues[i]);
+                    }
+                }
+            }
+
+            private static long[] newKeys(int size) {
+                final long[] result = new long[size];
+                Arrays.fill(result, EMPTY_KEY);
+                return result;
+            }
+        }
+    }
+
+    /**
+     * A growable list of primitive longs.
+     */
+    private static final class LongList {
+
+        private long[] elements = new long[16];
+        private int size;
+
+        void add(long element) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = element;
+        }
+
+        void addAll(LongList other) {
+            if (size + other.size > elements.length) {
+                elements = Arrays.copyOf(elements, Math.max(elements.length * 2, size + other.size));
+            }
+            System.arraycopy(other.elements, 0, elements, size, other.size);
+            size += other.size;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(elements, size);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa;
+
+import java.util.Arrays;
+
+import de.learnlib.spa.api.SPAAlphabet;
+import net.automatalib.words.Word;
+
+/**
+ * An index of the procedure invocations of a (fixed) word. The index is computed in a single pass upon construction
+ * and stores for every call symbol the index of its matching return symbol (and vice versa) as well as for every
+ * position the index of the call symbol of the innermost invocation that is active at this position (i.e. the parent
+ * links of the invocation tree). Afterwards, {@link #findCallIndex(int)} and {@link #findReturnIndex(int)} answer the
+ * same queries as their {@link TransformationUtil} counterparts in constant time (for positions outside of any
+ * invocation, return symbols without a matching call symbol are looked up in logarithmic time).
+ *
+ * @param <I>
+ *         input symbol class
+ *
+ * @author frohme
+ */
+public class InvocationTree<I> {
+
+    private static final int NONE = -1;
+
+    private final Word<I> word;
+
+    // for call symbols the index of the matching return symbol and vice versa, NONE otherwise
+    private final int[] matchingIndices;
+    // for every position (including the end of the word) the index of the innermost unmatched call before it
+    private final int[] parentIndices;
+    // the (ascending) indices of return symbols that do not match any call symbol
+    private final int[] unmatchedReturns;
+
+    public InvocationTree(SPAAlphabet<I> alphabet, Word<I> word) {
+        final int length = word.length();
+
+        this.word = word;
+        this.matchingIndices = new int[length];
+        this.parentIndices = new int[length + 1];
+
+        final int[] stack = new int[length];
+        final int[] unmatched = new int[length];
+        int stackSize = 0;
+        int numUnmatched = 0;
+
+        Arrays.fill(this.matchingIndices, NONE);
+        this.parentIndices[0] = NONE;
+
+        for (int i = 0; i < length; i++) {
+            final I sym = word.getSymbol(i);
+
+            if (alphabet.isCallSymbol(sym)) {
+                stack[stackSize++] = i;
+            } else if (alphabet.isReturnSymbol(sym)) {
+                if (stackSize > 0) {
+                    final int callIdx = stack[--stackSize];
+                    this.matchingIndices[callIdx] = i;
+                    this.matchingIndices[i] = callIdx;
+                } else {
+                    unmatched[numUnmatched++] = i;
+                }
+            }
+
+            this.parentIndices[i + 1] = stackSize > 0 ? stack[stackSize - 1] : NONE;
+        }
+
+        this.unmatchedReturns = Arrays.copyOf(unmatched, numUnmatched);
+    }
+
+    public Word<I> getWord() {
+        return word;
+    }
+
+    /**
+     * Return the index of the procedural call for the procedure currently executing the symbol at pos {@code idx}.
+     *
+     * @see TransformationUtil#findCallIndex(Word, int)
+     */
+    public int findCallIndex(int idx) {
+        return parentIndices[idx];
+    }
+
+    /**
+     * Return the index of the return call of the procedure currently active at (before) {@code idx}.
+     *
+     * @see TransformationUtil#findReturnIndex(Word, int)
+     */
+    public int findReturnIndex(int idx) {
+        final int callIdx = parentIndices[idx];
+
+        if (callIdx != NONE) {
+            return matchingIndices[callIdx];
+        }
+
+        // no active invocation, so only a return symbol without a matching call can terminate the search
+        int pos = Arrays.binarySearch(unmatchedReturns, idx);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        return pos < unmatchedReturns.length ? unmatchedReturns[pos] : NONE;
+    }
+
+    /**
+     * Returns the index of the return symbol matching the call symbol at {@code idx} (or vice versa).
+     *
+     * @return the index of the matching symbol, or {@code -1} if there is no matching symbol or the symbol at the given
+     * index is an internal symbol
+     */
+    public int getMatchingIndex(int idx) {
+        return matchingIndices[idx];
+    }
+
+    /**
+     * Returns the index of the call symbol of the invocation that contains the invocation starting at {@code
+     * callIdx}.
+     *
+     * @return the index of the parent call symbol, or {@code -1} if the invocation is not nested
+     */
+    public int getParentIndex(int callIdx) {
+        return parentIndices[callIdx];
+    }
+}
@@ -0,0 +1,299 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.automata.fsa.impl.compact.CompactDFA;
+import net.automatalib.commons.util.Pair;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.util.automata.copy.AutomatonCopyMethod;
+import net.automatalib.util.automata.copy.AutomatonLowLevelCopy;
+import net.automatalib.util.automata.fsa.MutableDFAs;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.SimpleAlphabet;
+
+/**
+ * Compares SPAs against a reference SPA procedure by procedure and reports the differences between them.
+ * <p>
+ * Only the observable part of a procedure is compared, i.e. the local words that can be embedded into a rooted word of
+ * the respective SPA: a procedure is observable if the initial procedure of its SPA terminates and the procedure can
+ * be accessed from it, and its local words may only call terminating procedures. All other transitions are treated as
+ * rejecting. As a consequence, every reported difference comes with a rooted witness word (access sequence, call
+ * symbol, expanded local word, return symbol, return sequence), which is accepted by exactly one of the two SPAs.
+ * <p>
+ * The access, terminating and return sequences as well as the observable procedures of the reference SPA are computed
+ * once upon construction. The procedures of a compared SPA are checked independently of each other by tasks of a given
+ * {@link Executor}, which compute a separating word via {@link
+ * Automata#findSeparatingWord(net.automatalib.automata.UniversalDeterministicAutomaton,
+ * net.automatalib.automata.UniversalDeterministicAutomaton, java.util.Collection)}.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class SPAEquivalenceChecker<I> {
+
+    private final Executor executor;
+    private final SPAAlphabet<I> alphabet;
+    private final Alphabet<I> proceduralAlphabet;
+    private final TransformationUtil<I> transformationUtil;
+
+    private final ObservableSPA<I> reference;
+    private final List<CompactDFA<I>> referenceProcedures;
+
+    public SPAEquivalenceChecker(SPA<?, I> reference) {
+        this(reference, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param reference
+     *         the reference (expected) SPA, whose alphabet is used for comparing procedures
+     * @param executor
+     *         the executor for the procedural checks
+     */
+    public SPAEquivalenceChecker(SPA<?, I> reference, Executor executor) {
+        this.executor = executor;
+        this.alphabet = reference.getInputAlphabet();
+        this.proceduralAlphabet = new SimpleAlphabet<>();
+        this.transformationUtil = new TransformationUtil<>(alphabet);
+
+        proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+
+        this.reference = new ObservableSPA<>(reference, alphabet, transformationUtil);
+        this.referenceProcedures = new ArrayList<>(alphabet.getNumCalls());
+
+        for (final I procedure : alphabet.getCallAlphabet()) {
+            referenceProcedures.add(this.reference.compact(procedure, proceduralAlphabet));
+        }
+    }
+
+    public boolean testEquivalence(SPA<?, I> actual) {
+        return findDifferences(actual).isEmpty();
+    }
+
+    /**
+     * Computes the differences between the reference SPA and the given SPA. If both SPAs accept some word but their
+     * initial procedures differ, a difference of the initial procedure of the reference SPA is reported first.
+     *
+     * @param actual
+     *         the actual SPA
+     *
+     * @return the differences, ordered by the call symbol index of their procedure
+     */
+    public List<Difference<I>> findDifferences(SPA<?, I> actual) {
+
+        final ObservableSPA<I> observable = new ObservableSPA<>(actual, alphabet, transformationUtil);
+        final List<CompletableFuture<Word<I>>> futures = new ArrayList<>(alphabet.getNumCalls());
+
+        for (int i = 0; i < alphabet.getNumCalls(); i++) {
+            final I procedure = alphabet.getCallSymbol(i);
+            final CompactDFA<I> expectedProcedure = referenceProcedures.get(i);
+
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                final CompactDFA<I> actualProcedure = observable.compact(procedure, proceduralAlphabet);
+                return Automata.findSeparatingWord(expectedProcedure, actualProcedure, proceduralAlphabet);
+            }, executor));
+        }
+
+        final List<Difference<I>> result = new ArrayList<>();
+        final I initialProcedure = reference.spa.getInitialProcedure();
+
+        if (reference.isTerminating() && observable.isTerminating() &&
+            !initialProcedure.equals(actual.getInitialProcedure())) {
+            final Word<I> terminatingSequence = reference.terminatingSequences.get(initialProcedure);
+            final Word<I> localWord = transformationUtil.normalize(terminatingSequence, 0);
+            final Word<I> witness = reference.embed(initialProcedure, localWord);
+            result.add(new Difference<>(initialProcedure, localWord, witness, true));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            final Word<I> separatingWord = futures.get(i).join();
+
+            if (separatingWord == null) {
+                continue;
+            }
+
+            final I procedure = alphabet.getCallSymbol(i);
+            final boolean expectedOutput = referenceProcedures.get(i).accepts(separatingWord);
+            final ObservableSPA<I> sequences = expectedOutput ? reference : observable;
+            final Word<I> witness = sequences.embed(procedure, separatingWord);
+
+            result.add(new Difference<>(procedure, separatingWord, witness, expectedOutput));
+        }
+
+        return result;
+    }
+
+    /**
+     * A difference between two procedures.
+     *
+     * @param <I>
+     *         input symbol type
+     */
+    public static final class Difference<I> {
+
+        private final I procedure;
+        private final Word<I> localWord;
+        private final Word<I> witness;
+        private final boolean expectedOutput;
+
+        Difference(I procedure, Word<I> localWord, Word<I> witness, boolean expectedOutput) {
+            this.procedure = procedure;
+            this.localWord = localWord;
+            this.witness = witness;
+            this.expectedOutput = expectedOutput;
+        }
+
+        public I getProcedure() {
+            return procedure;
+        }
+
+        /**
+         * Returns the (normalized) local word on which the two versions of the procedure disagree.
+         */
+        public Word<I> getLocalWord() {
+            return localWord;
+        }
+
+        /**
+         * Returns the rooted word that exhibits the difference.
+         */
+        public Word<I> getWitness() {
+            return witness;
+        }
+
+        /**
+         * Returns whether the local word (and therefore the witness) is accepted by the expected SPA.
+         */
+        public boolean getExpectedOutput() {
+            return expectedOutput;
+        }
+
+        @Override
+        public String toString() {
+            return procedure + ": " + localWord + " (" + expectedOutput + ")";
+        }
+    }
+
+    /**
+     * The access, terminating and return sequences of an SPA, which determine its observable procedures.
+     */
+    private static final class ObservableSPA<I> {
+
+        private final SPA<?, I> spa;
+        private final SPAAlphabet<I> alphabet;
+        private final TransformationUtil<I> transformationUtil;
+
+        private final Map<I, Word<I>> accessSequences;
+        private final Map<I, Word<I>> terminatingSequences;
+        private final Map<I, Word<I>> returnSequences;
+
+        /**
+         * The internal symbols and the calls of terminating procedures. Note that we cannot use the full procedural
+         * alphabet when copying procedures, because they may not support call symbols for which there exists no
+         * procedure.
+         */
+        private final Alphabet<I> observableAlphabet;
+
+        ObservableSPA(SPA<?, I> spa, SPAAlphabet<I> alphabet, TransformationUtil<I> transformationUtil) {
+            this.spa = spa;
+            this.alphabet = alphabet;
+            this.transformationUtil = transformationUtil;
+
+            final Map<I, DFA<?, I>> procedures = spa.getProcedures();
+
+            this.terminatingSequences = SPAUtil.computeTerminatingSequences(alphabet, procedures);
+            this.observableAlphabet = new SimpleAlphabet<>();
+
+            for (final I call : alphabet.getCallAlphabet()) {
+                if (terminatingSequences.containsKey(call)) {
+                    observableAlphabet.add(call);
+                }
+            }
+            observableAlphabet.addAll(alphabet.getInternalAlphabet());
+
+            final Pair<Map<I, Word<I>>, Map<I, Word<I>>> accessAndReturnSequences =
+                    SPAUtil.computeAccessAndReturnSequences(alphabet,
+                                                            spa.getInitialProcedure(),
+                                                            observableAlphabet,
+                                                            procedures,
+                                                            terminatingSequences,
+                                                            transformationUtil);
+
+            this.accessSequences = accessAndReturnSequences.getFirst();
+            this.returnSequences = accessAndReturnSequences.getSecond();
+        }
+
+        boolean isTerminating() {
+            final I initialProcedure = spa.getInitialProcedure();
+            return initialProcedure != null && terminatingSequences.containsKey(initialProcedure);
+        }
+
+        boolean isObservable(I procedure) {
+            return isTerminating() && accessSequences.containsKey(procedure);
+        }
+
+        /**
+         * Copies the observable part of the given procedure to a complete {@link CompactDFA} over the given procedural
+         * alphabet.
+         */
+        CompactDFA<I> compact(I procedure, Alphabet<I> proceduralAlphabet) {
+            final DFA<?, I> dfa = spa.getProcedures().get(procedure);
+            final CompactDFA<I> result;
+
+            if (dfa == null || !isObservable(procedure)) {
+                result = new CompactDFA<>(proceduralAlphabet, 1);
+                result.addInitialState(false);
+            } else {
+                result = new CompactDFA<>(proceduralAlphabet, dfa.size() + 1);
+                AutomatonLowLevelCopy.copy(AutomatonCopyMethod.STATE_BY_STATE, dfa, observableAlphabet, result);
+            }
+
+            MutableDFAs.complete(result, proceduralAlphabet, false);
+            return result;
+        }
+
+        /**
+         * Embeds a local word of an observable procedure that is accepted by its observable part into a rooted word.
+         */
+        Word<I> embed(I procedure, Word<I> localWord) {
+            assert isObservable(procedure);
+
+            final WordBuilder<I> builder = new WordBuilder<>();
+            builder.append(accessSequences.get(procedure));
+            builder.append(procedure);
+            builder.append(transformationUtil.expand(localWord, terminatingSequences::get));
+            builder.append(alphabet.getReturnSymbol());
+            builder.append(returnSequences.get(procedure));
+
+            return builder.toWord();
+        }
+    }
+}
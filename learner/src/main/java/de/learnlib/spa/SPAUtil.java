@@ -0,0 +1,705 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.google.common.collect.Maps;
+import de.learnlib.spa.analysis.SPAAnalysis;
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import de.learnlib.spa.impl.AbstractCompactSPA;
+import de.learnlib.spa.impl.CompactSPA;
+import de.learnlib.spa.impl.DefaultSPA;
+import de.learnlib.spa.impl.EmptySPA;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.automata.fsa.impl.compact.CompactDFA;
+import net.automatalib.commons.util.Pair;
+import net.automatalib.util.automata.minimizer.hopcroft.HopcroftMinimization;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.VPDAlphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.SimpleAlphabet;
+
+/**
+ * Utility methods for SPAs, e.g. for computing access, terminating and return sequences of (given) procedures.
+ * <p>
+ * The sequences are computed on a best-effort basis, i.e. procedures that cannot terminate or cannot be accessed simply
+ * do not have a sequence in the respective result map.
+ *
+ * @author frohme
+ */
+public final class SPAUtil {
+
+    private SPAUtil() {
+        // prevent instantiation
+    }
+
+    /**
+     * Computes for each procedure that can terminate a shortest (well-matched) terminating sequence.
+     *
+     * @param alphabet
+     *         the alphabet
+     * @param procedures
+     *         the procedures
+     * @param <I>
+     *         input symbol type
+     *
+     * @return a map from procedures to their terminating sequences
+     *
+     * @see SPAAnalysis#getTerminatingSequences()
+     */
+    public static <I> Map<I, Word<I>> computeTerminatingSequences(VPDAlphabet<I> alphabet,
+                                                                  Map<I, DFA<?, I>> procedures) {
+        return new SPAAnalysis<>(alphabet, null, procedures).getTerminatingSequences();
+    }
+
+    /**
+     * Computes for each procedure that can be accessed from the initial procedure an access sequence and a (matching)
+     * return sequence. Only symbols of the given procedural alphabet are used for accessing procedures, which therefore
+     * should only contain call symbols of procedures with a terminating sequence.
+     * <p>
+     * A procedure can be accessed if a procedure that can be accessed itself has a path from its initial state to an
+     * accepting state that contains a call of the procedure. Each procedure is processed once, by a forward and a
+     * backward breadth-first search over its states, so that every procedure that can be accessed is found.
+     *
+     * @param alphabet
+     *         the alphabet
+     * @param initialProcedure
+     *         the initial procedure
+     * @param proceduralAlphabet
+     *         the internal and call symbols that may be used for accessing procedures
+     * @param procedures
+     *         the procedures
+     * @param terminatingSequences
+     *         the terminating sequences of the procedures
+     * @param transformationUtil
+     *         the transformation util for expanding local words
+     * @param <I>
+     *         input symbol type
+     *
+     * @return a pair of maps from procedures to their access sequences and return sequences, respectively
+     */
+    public static <I> Pair<Map<I, Word<I>>, Map<I, Word<I>>> computeAccessAndReturnSequences(VPDAlphabet<I> alphabet,
+                                                                                             I initialProcedure,
+                                                                                             Alphabet<I> proceduralAlphabet,
+                                                                                             Map<I, DFA<?, I>> procedures,
+                                                                                             Map<I, Word<I>> terminatingSequences,
+                                                                                             TransformationUtil<I> transformationUtil) {
+
+        final Map<I, Word<I>> accessSequences = Maps.newHashMapWithExpectedSize(procedures.size());
+        final Map<I, Word<I>> returnSequences = Maps.newHashMapWithExpectedSize(procedures.size());
+
+        if (initialProcedure == null || !procedures.containsKey(initialProcedure)) {
+            return Pair.make(accessSequences, returnSequences);
+        }
+
+        // initial value
+        accessSequences.put(initialProcedure, Word.epsilon());
+        returnSequences.put(initialProcedure, Word.epsilon());
+
+        final Deque<I> queue = new ArrayDeque<>();
+        queue.add(initialProcedure);
+
+        while (!queue.isEmpty()) {
+            final I procedure = queue.poll();
+            final DFA<?, I> dfa = procedures.get(procedure);
+
+            if (dfa != null) {
+                computeAccessAndReturnSequencesInternal(alphabet,
+                                                        proceduralAlphabet,
+                                                        procedure,
+                                                        dfa,
+                                                        terminatingSequences,
+                                                        accessSequences,
+                                                        returnSequences,
+                                                        transformationUtil,
+                                                        queue);
+            }
+        }
+
+        return Pair.make(accessSequences, returnSequences);
+    }
+
+    /**
+     * Computes a reduced version of the given SPA that accepts the same language. The reduced SPA
+     * <ul>
+     * <li>only contains procedures that can terminate and that can be invoked from the initial procedure (in a context
+     * that can terminate),</li>
+     * <li>only contains states that are reachable and co-reachable (using internal transitions and calls to
+     * terminating procedures), i.e. all transitions to other states and all call transitions to non-terminating
+     * procedures are removed, and</li>
+     * <li>only contains minimal procedures.</li>
+     * </ul>
+     *
+     * @param spa
+     *         the SPA to reduce
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the reduced SPA
+     */
+    public static <I> SPA<?, I> reduce(SPA<?, I> spa) {
+        final SPAAlphabet<I> alphabet = spa.getInputAlphabet();
+        final AbstractCompactSPA<I> compactSPA = CompactSPA.of(spa);
+        final boolean[][] coReachable = compactSPA.computeCoReachableStates();
+
+        final int numIds = compactSPA.getNumProcedureIds();
+        final int numInternals = compactSPA.getNumInternals();
+        final int numInputs = compactSPA.getNumProceduralInputs();
+        final int initialId = compactSPA.getInitialProcedureId();
+
+        final boolean[] terminating = new boolean[numIds];
+        for (int p = 0; p < numIds; p++) {
+            final int init = compactSPA.getIntInitialState(p);
+            terminating[p] = init >= 0 && coReachable[p][init];
+        }
+
+        if (initialId < 0 || !terminating[initialId]) {
+            return new EmptySPA<>(alphabet);
+        }
+
+        // explore the useful (i.e. reachable and co-reachable) states of all invoked procedures
+        final boolean[][] useful = new boolean[numIds][];
+        final Deque<Integer> procedureQueue = new ArrayDeque<>();
+        final Deque<Integer> stateQueue = new ArrayDeque<>();
+
+        useful[initialId] = new boolean[compactSPA.getNumStates(initialId)];
+        procedureQueue.add(initialId);
+
+        while (!procedureQueue.isEmpty()) {
+            final int p = procedureQueue.poll();
+            final int init = compactSPA.getIntInitialState(p);
+
+            useful[p][init] = true;
+            stateQueue.add(init);
+
+            while (!stateQueue.isEmpty()) {
+                final int s = stateQueue.poll();
+
+                for (int i = 0; i < numInputs; i++) {
+                    final int succ = compactSPA.getIntSuccessor(p, s, i);
+
+                    if (succ < 0 || !coReachable[p][succ]) {
+                        continue;
+                    }
+
+                    if (i >= numInternals) {
+                        final int callee = i - numInternals;
+                        if (!terminating[callee]) {
+                            continue;
+                        }
+                        if (useful[callee] == null) {
+                            useful[callee] = new boolean[compactSPA.getNumStates(callee)];
+                            procedureQueue.add(callee);
+                        }
+                    }
+
+                    if (!useful[p][succ]) {
+                        useful[p][succ] = true;
+                        stateQueue.add(succ);
+                    }
+                }
+            }
+        }
+
+        final Alphabet<I> proceduralAlphabet = new SimpleAlphabet<>();
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+        proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+
+        final Map<I, CompactDFA<I>> procedures = Maps.newHashMapWithExpectedSize(numIds);
+
+        for (int p = 0; p < numIds; p++) {
+            if (useful[p] != null) {
+                final CompactDFA<I> trimmed = trim(compactSPA, p, useful[p], terminating, proceduralAlphabet);
+                final CompactDFA<I> minimized = HopcroftMinimization.minimizeDFA(trimmed, proceduralAlphabet);
+                procedures.put(alphabet.getCallSymbol(p), removeSink(minimized, proceduralAlphabet));
+            }
+        }
+
+        return new DefaultSPA<>(alphabet, spa.getInitialProcedure(), procedures);
+    }
+
+    /**
+     * Unrolls the given SPA into a (partial) DFA over its full alphabet that accepts exactly the accepted words of the
+     * SPA whose nesting depth (i.e. the maximum number of simultaneously active invocations) does not exceed the given
+     * bound.
+     * <p>
+     * Each state of the DFA corresponds to a configuration, i.e. the current procedure and state together with the
+     * stack context of pending continuations. Stack contexts are shared, so that configurations with identical contexts
+     * (regardless of the word that leads to them) are represented by the same state. Additionally, the DFA is trimmed:
+     * it only contains states from which an accepting state can be reached within the depth bound. The size of the
+     * result (see {@link CompactDFA#size()}) therefore may serve as an indicator for choosing the depth.
+     *
+     * @param spa
+     *         the SPA to unroll
+     * @param maxDepth
+     *         the maximum nesting depth
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the unrolled DFA
+     */
+    public static <I> CompactDFA<I> flatten(SPA<?, I> spa, int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Depth must not be negative");
+        }
+
+        final SPAAlphabet<I> alphabet = spa.getInputAlphabet();
+        final AbstractCompactSPA<I> compactSPA = CompactSPA.of(spa);
+        final boolean[][] coReachable = compactSPA.computeCoReachableStates();
+
+        final int numIds = compactSPA.getNumProcedureIds();
+        final int numInternals = compactSPA.getNumInternals();
+        final int numInputs = compactSPA.getNumProceduralInputs();
+        final int initialId = compactSPA.getInitialProcedureId();
+
+        final CompactDFA<I> result = new CompactDFA<>(alphabet);
+        final int init = result.addIntInitialState(false);
+
+        if (initialId < 0 || maxDepth == 0 || !compactSPA.hasProcedure(initialId)) {
+            return result;
+        }
+
+        final int initialProcedureState = compactSPA.getIntInitialState(initialId);
+
+        if (initialProcedureState < 0 || !coReachable[initialId][initialProcedureState]) {
+            return result;
+        }
+
+        // alphabet indices of the procedural symbols and the return symbol
+        final int[] symbolIndices = new int[numInputs];
+        for (int i = 0; i < numInputs; i++) {
+            final I sym = i < numInternals ? alphabet.getInternalSymbol(i) : alphabet.getCallSymbol(i - numInternals);
+            symbolIndices[i] = alphabet.getSymbolIndex(sym);
+        }
+        final int returnIndex = alphabet.getSymbolIndex(alphabet.getReturnSymbol());
+
+        // global state indices
+        final int[] offsets = new int[numIds + 1];
+        for (int p = 0; p < numIds; p++) {
+            offsets[p + 1] = offsets[p] + compactSPA.getNumStates(p);
+        }
+        final int[] procedureOfState = new int[offsets[numIds]];
+        for (int p = 0; p < numIds; p++) {
+            Arrays.fill(procedureOfState, offsets[p], offsets[p + 1], p);
+        }
+
+        // shared stack contexts: id -> (parent id, global continuation state, depth), where 0 is the empty context
+        final Map<Long, Integer> stackIds = new HashMap<>();
+        int[] stacks = new int[3 * 16];
+        int numStacks = 1;
+
+        final ConfigurationStates<I> states = new ConfigurationStates<>(result);
+        final int initialState = states.getState(offsets[initialId] + initialProcedureState);
+        result.setTransition(init, alphabet.getSymbolIndex(alphabet.getCallSymbol(initialId)), initialState);
+
+        int terminated = -1;
+
+        // DFA states are created in BFS order
+        for (int q = initialState; q < result.size(); q++) {
+            if (q == terminated) {
+                continue;
+            }
+
+            final long configuration = states.getConfiguration(q);
+            final int stack = (int) (configuration >>> 32);
+            final int globalState = (int) configuration;
+            final int p = procedureOfState[globalState];
+            final int s = globalState - offsets[p];
+            final int depth = stack == 0 ? 1 : stacks[3 * stack + 2] + 1;
+
+            for (int i = 0; i < numInputs; i++) {
+                final int succ = compactSPA.getIntSuccessor(p, s, i);
+                if (succ < 0 || !coReachable[p][succ]) {
+                    continue;
+                }
+
+                if (i < numInternals) {
+                    final int target = states.getState(((long) stack << 32) | (offsets[p] + succ));
+                    result.setTransition(q, symbolIndices[i], target);
+                    continue;
+                }
+
+                final int callee = i - numInternals;
+                final int calleeInit = compactSPA.getIntInitialState(callee);
+
+                if (depth >= maxDepth || calleeInit < 0 || !coReachable[callee][calleeInit]) {
+                    continue;
+                }
+
+                final long stackKey = ((long) stack << 32) | (offsets[p] + succ);
+                Integer newStack = stackIds.get(stackKey);
+
+                if (newStack == null) {
+                    newStack = numStacks++;
+                    stackIds.put(stackKey, newStack);
+                    if (3 * numStacks > stacks.length) {
+                        stacks = Arrays.copyOf(stacks, stacks.length * 2);
+                    }
+                    stacks[3 * newStack] = stack;
+                    stacks[3 * newStack + 1] = offsets[p] + succ;
+                    stacks[3 * newStack + 2] = depth;
+                }
+
+                final int target = states.getState(((long) newStack << 32) | (offsets[callee] + calleeInit));
+                result.setTransition(q, symbolIndices[i], target);
+            }
+
+            if (compactSPA.isIntAccepting(p, s)) {
+                if (stack != 0) {
+                    final int target = states.getState(((long) stacks[3 * stack] << 32) | stacks[3 * stack + 1]);
+                    result.setTransition(q, returnIndex, target);
+                } else {
+                    if (terminated < 0) {
+                        terminated = result.addIntState(true);
+                    }
+                    result.setTransition(q, returnIndex, terminated);
+                }
+            }
+        }
+
+        return trimDFA(result, alphabet.size());
+    }
+
+    /**
+     * Copies the useful states of the given procedure to a (complete) DFA, where all removed transitions lead to an
+     * additional sink.
+     */
+    private static <I> CompactDFA<I> trim(AbstractCompactSPA<I> spa,
+                                          int procedure,
+                                          boolean[] useful,
+                                          boolean[] terminating,
+                                          Alphabet<I> proceduralAlphabet) {
+        final int numInternals = spa.getNumInternals();
+        final int numInputs = spa.getNumProceduralInputs();
+        final int[] stateMap = new int[useful.length];
+        final CompactDFA<I> result = new CompactDFA<>(proceduralAlphabet, useful.length + 1);
+
+        for (int s = 0; s < useful.length; s++) {
+            stateMap[s] = useful[s] ? result.addIntState(spa.isIntAccepting(procedure, s)) : -1;
+        }
+
+        final int sink = result.addIntState(false);
+
+        for (int s = 0; s < useful.length; s++) {
+            if (!useful[s]) {
+                continue;
+            }
+
+            for (int i = 0; i < numInputs; i++) {
+                final int succ = spa.getIntSuccessor(procedure, s, i);
+                final boolean enabled =
+                        succ >= 0 && useful[succ] && (i < numInternals || terminating[i - numInternals]);
+                result.setTransition(stateMap[s], i, enabled ? stateMap[succ] : sink);
+            }
+        }
+
+        for (int i = 0; i < numInputs; i++) {
+            result.setTransition(sink, i, sink);
+        }
+
+        result.setInitialState(stateMap[spa.getIntInitialState(procedure)]);
+
+        return result;
+    }
+
+    /**
+     * Copies the given (minimal, complete) DFA without its sink, i.e. the (unique) rejecting state without outgoing
+     * transitions to other states. Transitions to the sink are left undefined.
+     */
+    private static <I> CompactDFA<I> removeSink(CompactDFA<I> dfa, Alphabet<I> proceduralAlphabet) {
+        final int size = dfa.size();
+        final int numInputs = proceduralAlphabet.size();
+
+        int sink = -1;
+
+        for (int s = 0; s < size && sink < 0; s++) {
+            if (!dfa.isAccepting(s)) {
+                boolean isSink = true;
+                for (int i = 0; i < numInputs && isSink; i++) {
+                    isSink = dfa.getSuccessor(s, i) == s;
+                }
+                if (isSink) {
+                    sink = s;
+                }
+            }
+        }
+
+        if (sink < 0) {
+            return dfa;
+        }
+
+        final CompactDFA<I> result = new CompactDFA<>(proceduralAlphabet, size - 1);
+        final int[] stateMap = new int[size];
+
+        for (int s = 0; s < size; s++) {
+            stateMap[s] = s == sink ? -1 : result.addIntState(dfa.isAccepting(s));
+        }
+
+        for (int s = 0; s < size; s++) {
+            if (s == sink) {
+                continue;
+            }
+            for (int i = 0; i < numInputs; i++) {
+                final int succ = dfa.getSuccessor(s, i);
+                if (succ != sink) {
+                    result.setTransition(stateMap[s], i, stateMap[succ]);
+                }
+            }
+        }
+
+        result.setInitialState(stateMap[dfa.getIntInitialState()]);
+
+        return result;
+    }
+
+    private static <S, I> void computeAccessAndReturnSequencesInternal(VPDAlphabet<I> alphabet,
+                                                                       Alphabet<I> proceduralAlphabet,
+                                                                       I procedure,
+                                                                       DFA<S, I> dfa,
+                                                                       Map<I, Word<I>> terminatingSequences,
+                                                                       Map<I, Word<I>> accessSequences,
+                                                                       Map<I, Word<I>> returnSequences,
+                                                                       TransformationUtil<I> transformationUtil,
+                                                                       Deque<I> queue) {
+
+        final Map<S, Word<I>> prefixes = computeShortestPrefixes(dfa, proceduralAlphabet);
+        final Map<S, Word<I>> suffixes = computeShortestSuffixes(dfa, proceduralAlphabet);
+
+        for (final Entry<S, Word<I>> entry : prefixes.entrySet()) {
+            for (final I input : proceduralAlphabet) {
+                if (!alphabet.isCallSymbol(input) || accessSequences.containsKey(input)) {
+                    continue;
+                }
+
+                final S succ = dfa.getSuccessor(entry.getKey(), input);
+                final Word<I> suffix = succ == null ? null : suffixes.get(succ);
+
+                if (suffix != null) {
+                    final Word<I> localAccess = transformationUtil.expand(entry.getValue(), terminatingSequences::get);
+                    accessSequences.put(input, accessSequences.get(procedure).append(procedure).concat(localAccess));
+
+                    final Word<I> localTerminating = transformationUtil.expand(suffix, terminatingSequences::get);
+                    returnSequences.put(input,
+                                        localTerminating.append(alphabet.getReturnSymbol(0))
+                                                        .concat(returnSequences.get(procedure)));
+
+                    queue.add(input);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes for each state reachable from the initial state a shortest word that reaches it.
+     */
+    private static <S, I> Map<S, Word<I>> computeShortestPrefixes(DFA<S, I> dfa, Alphabet<I> inputs) {
+        final Map<S, Word<I>> result = new LinkedHashMap<>();
+        final S init = dfa.getInitialState();
+
+        if (init == null) {
+            return result;
+        }
+
+        final Deque<S> queue = new ArrayDeque<>();
+        result.put(init, Word.epsilon());
+        queue.add(init);
+
+        while (!queue.isEmpty()) {
+            final S s = queue.poll();
+            final Word<I> prefix = result.get(s);
+
+            for (final I i : inputs) {
+                final S succ = dfa.getSuccessor(s, i);
+                if (succ != null && !result.containsKey(succ)) {
+                    result.put(succ, prefix.append(i));
+                    queue.add(succ);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes for each state from which an accepting state can be reached a shortest word that reaches one.
+     */
+    private static <S, I> Map<S, Word<I>> computeShortestSuffixes(DFA<S, I> dfa, Alphabet<I> inputs) {
+        final Map<S, List<Pair<S, I>>> predecessors = Maps.newHashMapWithExpectedSize(dfa.size());
+        final Map<S, Word<I>> result = Maps.newHashMapWithExpectedSize(dfa.size());
+        final Deque<S> queue = new ArrayDeque<>();
+
+        for (final S s : dfa.getStates()) {
+            for (final I i : inputs) {
+                final S succ = dfa.getSuccessor(s, i);
+                if (succ != null) {
+                    predecessors.computeIfAbsent(succ, k -> new ArrayList<>()).add(Pair.make(s, i));
+                }
+            }
+
+            if (dfa.isAccepting(s)) {
+                result.put(s, Word.epsilon());
+                queue.add(s);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            final S s = queue.poll();
+            final Word<I> suffix = result.get(s);
+
+            for (final Pair<S, I> pred : predecessors.getOrDefault(s, Collections.emptyList())) {
+                if (!result.containsKey(pred.getFirst())) {
+                    result.put(pred.getFirst(), suffix.prepend(pred.getSecond()));
+                    queue.add(pred.getFirst());
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes all states from the given DFA from which no accepting state can be reached, except for the initial
+     * state.
+     */
+    private static <I> CompactDFA<I> trimDFA(CompactDFA<I> dfa, int numInputs) {
+        final int size = dfa.size();
+
+        // predecessors in CSR format
+        final int[] start = new int[size + 1];
+        for (int s = 0; s < size; s++) {
+            for (int i = 0; i < numInputs; i++) {
+                final int succ = dfa.getSuccessor(s, i);
+                if (succ >= 0) {
+                    start[succ + 1]++;
+                }
+            }
+        }
+        for (int s = 0; s < size; s++) {
+            start[s + 1] += start[s];
+        }
+
+        final int[] fill = Arrays.copyOf(start, size);
+        final int[] predecessors = new int[start[size]];
+        for (int s = 0; s < size; s++) {
+            for (int i = 0; i < numInputs; i++) {
+                final int succ = dfa.getSuccessor(s, i);
+                if (succ >= 0) {
+                    predecessors[fill[succ]++] = s;
+                }
+            }
+        }
+
+        final boolean[] live = new boolean[size];
+        final int[] worklist = new int[size];
+        int numLive = 0;
+
+        for (int s = 0; s < size; s++) {
+            if (dfa.isAccepting(s)) {
+                live[s] = true;
+                worklist[numLive++] = s;
+            }
+        }
+
+        for (int i = 0; i < numLive; i++) {
+            final int s = worklist[i];
+            for (int j = start[s]; j < start[s + 1]; j++) {
+                if (!live[predecessors[j]]) {
+                    live[predecessors[j]] = true;
+                    worklist[numLive++] = predecessors[j];
+                }
+            }
+        }
+
+        final int init = dfa.getIntInitialState();
+
+        if (numLive == size || (numLive == size - 1 && !live[init])) {
+            return dfa;
+        }
+
+        live[init] = true;
+
+        final CompactDFA<I> result = new CompactDFA<>(dfa.getInputAlphabet(), numLive + 1);
+        final int[] stateMap = new int[size];
+
+        for (int s = 0; s < size; s++) {
+            stateMap[s] = live[s] ? result.addIntState(dfa.isAccepting(s)) : -1;
+        }
+
+        for (int s = 0; s < size; s++) {
+            if (!live[s]) {
+                continue;
+            }
+            for (int i = 0; i < numInputs; i++) {
+                final int succ = dfa.getSuccessor(s, i);
+                if (succ >= 0 && live[succ]) {
+                    result.setTransition(stateMap[s], i, stateMap[succ]);
+                }
+            }
+        }
+
+        result.setInitialState(stateMap[init]);
+
+        return result;
+    }
+
+    /**
+     * The mapping between the configurations of an SPA (packed stack id and global state index) and the states of an
+     * unrolled DFA.
+     */
+    private static final class ConfigurationStates<I> {
+
+        private final CompactDFA<I> dfa;
+        private final Map<Long, Integer> states;
+        private long[] configurations;
+
+        ConfigurationStates(CompactDFA<I> dfa) {
+            this.dfa = dfa;
+            this.states = new HashMap<>();
+            this.configurations = new long[16];
+        }
+
+        int getState(long configuration) {
+            final Integer existing = states.get(configuration);
+            if (existing != null) {
+                return existing;
+            }
+
+            final int state = dfa.addIntState(false);
+            states.put(configuration, state);
+
+            if (state >= configurations.length) {
+                configurations = Arrays.copyOf(configurations, Math.max(configurations.length * 2, state + 1));
+            }
+            configurations[state] = configuration;
+
+            return state;
+        }
+
+        long getConfiguration(int state) {
+            return configurations[state];
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nullable;
+
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import de.learnlib.spa.impl.AbstractCompactSPA;
+import de.learnlib.spa.impl.CompactSPA;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * Draws accepted words of a given length uniformly at random from an SPA.
+ * <p>
+ * The sampler maintains a counting table that stores for each procedure {@code p}, state {@code s} and length {@code
+ * l} the number of (well-matched) words of length {@code l} that lead from {@code s} to an accepting state of {@code
+ * p}, where nested invocations contribute the number of accepted words of the respective callee. The table is computed
+ * (once) up to the largest requested length and extended on demand. Sampling a word then only requires a single pass,
+ * in which each symbol is chosen with a probability proportional to the number of completions it admits.
+ * <p>
+ * Counts are stored as {@link BigInteger}s, because the number of accepted words grows exponentially in the length.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class SPAWordSampler<I> {
+
+    private final AbstractCompactSPA<I> spa;
+    private final SPAAlphabet<I> alphabet;
+    private final int numInternals;
+    private final int numProcedureIds;
+
+    // counts.get(l)[p][s], null entries for non-existing procedures
+    private final List<BigInteger[][]> counts;
+
+    public SPAWordSampler(SPA<?, I> spa) {
+        this.spa = CompactSPA.of(spa);
+        this.alphabet = spa.getInputAlphabet();
+        this.numInternals = this.spa.getNumInternals();
+        this.numProcedureIds = this.spa.getNumProcedureIds();
+        this.counts = new ArrayList<>();
+    }
+
+    /**
+     * Returns the number of accepted words of the given length.
+     */
+    public BigInteger countAcceptedWords(int length) {
+        final int initialId = spa.getInitialProcedureId();
+
+        // every accepted word consists of (at least) the initial call and the final return
+        if (initialId < 0 || !spa.hasProcedure(initialId) || length < 2) {
+            return BigInteger.ZERO;
+        }
+
+        return getCount(initialId, spa.getIntInitialState(initialId), length - 2);
+    }
+
+    /**
+     * Samples an accepted word of the given length uniformly at random.
+     *
+     * @param random
+     *         the random generator to use
+     * @param length
+     *         the length of the word
+     *
+     * @return an accepted word of the given length, or {@code null} if there exists no such word
+     */
+    @Nullable
+    public Word<I> sample(Random random, int length) {
+        if (countAcceptedWords(length).signum() == 0) {
+            return null;
+        }
+
+        final int initialId = spa.getInitialProcedureId();
+        final WordBuilder<I> builder = new WordBuilder<>(length);
+
+        // stack of (procedure, state, remaining length) triples of the active invocations
+        int[] stack = new int[3 * 16];
+        int depth = 0;
+
+        builder.append(alphabet.getCallSymbol(initialId));
+        stack[depth++] = initialId;
+        stack[depth++] = spa.getIntInitialState(initialId);
+        stack[depth++] = length - 2;
+
+        while (depth > 0) {
+            final int p = stack[depth - 3];
+            final int s = stack[depth - 2];
+            final int l = stack[depth - 1];
+
+            if (l == 0) {
+                builder.append(alphabet.getReturnSymbol());
+                depth -= 3;
+                continue;
+            }
+
+            BigInteger choice = nextBigInteger(random, getCount(p, s, l));
+
+            // internal symbols
+            for (int i = 0; i < numInternals; i++) {
+                final int succ = spa.getIntSuccessor(p, s, i);
+                if (succ < 0) {
+                    continue;
+                }
+
+                final BigInteger weight = getCount(p, succ, l - 1);
+                if (choice.compareTo(weight) < 0) {
+                    builder.append(alphabet.getInternalSymbol(i));
+                    stack[depth - 2] = succ;
+                    stack[depth - 1] = l - 1;
+                    break;
+                }
+                choice = choice.subtract(weight);
+            }
+
+            if (stack[depth - 1] != l) {
+                continue;
+            }
+
+            // calls, split by the length of the nested invocation
+            found:
+            for (int c = 0; c < numProcedureIds; c++) {
+                final int succ = spa.getIntSuccessor(p, s, numInternals + c);
+                final int calleeInit = spa.getIntInitialState(c);
+                if (succ < 0 || calleeInit < 0) {
+                    continue;
+                }
+
+                for (int k = 0; k <= l - 2; k++) {
+                    final BigInteger weight = getCount(c, calleeInit, k).multiply(getCount(p, succ, l - 2 - k));
+                    if (choice.compareTo(weight) < 0) {
+                        builder.append(alphabet.getCallSymbol(c));
+                        stack[depth - 2] = succ;
+                        stack[depth - 1] = l - 2 - k;
+
+                        if (depth == stack.length) {
+                            stack = Arrays.copyOf(stack, stack.length * 2);
+                        }
+                        stack[depth++] = c;
+                        stack[depth++] = calleeInit;
+                        stack[depth++] = k;
+                        break found;
+                    }
+                    choice = choice.subtract(weight);
+                }
+            }
+        }
+
+        return builder.toWord();
+    }
+
+    /**
+     * Returns the number of accepted local words of the given length, or zero if the state is undefined (e.g. the
+     * initial state of a procedure without states).
+     */
+    private BigInteger getCount(int procedure, int state, int length) {
+        final BigInteger[] procedureCounts = getCounts(length)[procedure];
+        return procedureCounts == null || state < 0 ? BigInteger.ZERO : procedureCounts[state];
+    }
+
+    private synchronized BigInteger[][] getCounts(int length) {
+        while (counts.size() <= length) {
+            counts.add(computeCounts(counts.size()));
+        }
+        return counts.get(length);
+    }
+
+    private BigInteger[][] computeCounts(int length) {
+        final BigInteger[][] result = new BigInteger[numProcedureIds][];
+
+        for (int p = 0; p < numProcedureIds; p++) {
+            if (!spa.hasProcedure(p)) {
+                continue;
+            }
+
+            final int size = spa.getNumStates(p);
+            result[p] = new BigInteger[size];
+
+            for (int s = 0; s < size; s++) {
+                if (length == 0) {
+                    result[p][s] = spa.isIntAccepting(p, s) ? BigInteger.ONE : BigInteger.ZERO;
+                    continue;
+                }
+
+                BigInteger sum = BigInteger.ZERO;
+
+                for (int i = 0; i < numInternals; i++) {
+                    final int succ = spa.getIntSuccessor(p, s, i);
+                    if (succ >= 0) {
+                        sum = sum.add(counts.get(length - 1)[p][succ]);
+                    }
+                }
+
+                for (int c = 0; c < numProcedureIds; c++) {
+                    final int succ = spa.getIntSuccessor(p, s, numInternals + c);
+                    final int calleeInit = spa.getIntInitialState(c);
+                    if (succ < 0 || calleeInit < 0) {
+                        continue;
+                    }
+
+                    for (int k = 0; k <= length - 2; k++) {
+                        final BigInteger nested = counts.get(k)[c][calleeInit];
+                        if (nested.signum() != 0) {
+                            sum = sum.add(nested.multiply(counts.get(length - 2 - k)[p][succ]));
+                        }
+                    }
+                }
+
+                result[p][s] = sum;
+            }
+        }
+
+        return result;
+    }
+
+    private static BigInteger nextBigInteger(Random random, BigInteger bound) {
+        BigInteger result;
+        do {
+            result = new BigInteger(bound.bitLength(), random);
+        } while (result.compareTo(bound) >= 0);
+        return result;
+    }
+}
@@ -22,7 +22,8 @@ import net.automatalib.words.Word;
 import net.automatalib.words.WordBuilder;
 
 /**
- * Utility class for projecting/expanding words and index calculations.
+ * Utility class for projecting/expanding words and index calculations. For repeated index calculations on the same
+ * word, see {@link InvocationTree}.
  *
  * @param <I>
  *         input symbol class
@@ -71,22 +72,44 @@ public class TransformationUtil<I> {
      * replaces all inner calls with an abstracted procedure call.
      */
     public Word<I> normalize(final Word<I> input, final int idx) {
-        final WordBuilder<I> wb = new WordBuilder<>(input.size());
+        return normalize(new InvocationTree<>(this.alphabet, input), idx, input.size());
+    }
 
-        for (int i = idx; i < input.size(); i++) {
-            final I sym = input.getSymbol(i);
+    /**
+     * replaces all inner calls of the sub-word {@code [from, to)} of the indexed word with an abstracted procedure
+     * call.
+     */
+    public Word<I> normalize(final InvocationTree<I> tree, final int from, final int to) {
+        final Word<I> input = tree.getWord();
 
-            if (this.alphabet.isCallSymbol(sym)) {
-                final int returnIdx = findReturnIndex(input, i + 1);
+        // determine the exact length first, so that the builder's array is the only allocation
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            if (this.alphabet.isCallSymbol(input.getSymbol(i))) {
+                final int returnIdx = tree.getMatchingIndex(i);
 
-                if (returnIdx == -1) {
+                if (returnIdx == -1 || returnIdx >= to) {
                     throw new IllegalArgumentException();
                 }
 
-                wb.append(input.getSymbol(i));
                 i = returnIdx;
-            } else {
-                wb.append(input.getSymbol(i));
+            }
+            length++;
+        }
+
+        if (length == to - from) {
+            return input.subWord(from, to);
+        }
+
+        final WordBuilder<I> wb = new WordBuilder<>(length);
+
+        for (int i = from; i < to; i++) {
+            final I sym = input.getSymbol(i);
+
+            wb.append(sym);
+
+            if (this.alphabet.isCallSymbol(sym)) {
+                i = tree.getMatchingIndex(i);
             }
         }
 
@@ -127,7 +150,15 @@ public class TransformationUtil<I> {
      * Replaces all abstracted procedure calls with their corresponding terminating sequence.
      */
     public Word<I> expand(final Word<I> input, final Function<I, Word<I>> terminatingSequenceProvider) {
-        final WordBuilder<I> wb = new WordBuilder<>();
+        int length = input.size();
+        for (int i = 0; i < input.size(); i++) {
+            final I sym = input.getSymbol(i);
+            if (this.alphabet.isCallSymbol(sym)) {
+                length += terminatingSequenceProvider.apply(sym).size() + 1;
+            }
+        }
+
+        final WordBuilder<I> wb = new WordBuilder<>(length);
 
         for (int i = 0; i < input.size(); i++) {
             final I sym = input.getSymbol(i);
@@ -143,4 +174,47 @@ public class TransformationUtil<I> {
 
         return wb.toWord();
     }
+
+    /**
+     * Replaces all abstracted procedure calls with their corresponding embedded terminating sequence (see {@link
+     * #embed(Object, Word)}). Since the embeddings are usually cached by the {@link de.learnlib.spa.api.ATRProvider},
+     * each procedure call amounts to a single bulk copy.
+     */
+    public Word<I> expandEmbedded(final Word<I> input, final Function<I, Word<I>> embeddingProvider) {
+        int length = 0;
+        for (int i = 0; i < input.size(); i++) {
+            final I sym = input.getSymbol(i);
+            length += this.alphabet.isCallSymbol(sym) ? embeddingProvider.apply(sym).size() : 1;
+        }
+
+        if (length == input.size()) {
+            return input;
+        }
+
+        final WordBuilder<I> wb = new WordBuilder<>(length);
+
+        for (int i = 0; i < input.size(); i++) {
+            final I sym = input.getSymbol(i);
+
+            if (this.alphabet.isCallSymbol(sym)) {
+                wb.append(embeddingProvider.apply(sym));
+            } else {
+                wb.append(sym);
+            }
+        }
+
+        return wb.toWord();
+    }
+
+    /**
+     * Returns the concatenation of the given procedure (call symbol), its terminating sequence and the return symbol,
+     * i.e. a complete invocation of the given procedure.
+     */
+    public Word<I> embed(final I procedure, final Word<I> terminatingSequence) {
+        final WordBuilder<I> wb = new WordBuilder<>(terminatingSequence.size() + 2);
+        wb.append(procedure);
+        wb.append(terminatingSequence);
+        wb.append(this.alphabet.getReturnSymbol());
+        return wb.toWord();
+    }
 }
@@ -0,0 +1,627 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import de.learnlib.spa.api.SPA;
+import net.automatalib.automata.concepts.StateIDs;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.words.VPDAlphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+
+/**
+ * Language analyses of an SPA (or a set of procedures), i.e.
+ * <ul>
+ * <li>the productive procedures (that accept at least one well-matched word),</li>
+ * <li>the shortest terminating sequence of each productive procedure,</li>
+ * <li>the reachable procedures (that are invoked in at least one accepted word), and</li>
+ * <li>the emptiness and finiteness of the language.</li>
+ * </ul>
+ * All analyses are computed once upon construction. The shortest terminating sequences are determined by a single
+ * (backwards) Dijkstra run over the states of all procedures, in which call transitions are relaxed as soon as the
+ * shortest terminating sequence of the callee is known (Knuth's generalization to grammars). The remaining analyses
+ * are single worklist passes. Hence, the analysis runs in time {@code O(m log n)} for {@code m} transitions and {@code
+ * n} states in total.
+ * <p>
+ * Note that the length of the shortest terminating sequences may be exponential in the size of the procedures.
+ * Lengths are therefore reported saturated at {@link Long#MAX_VALUE} and words are only constructed on request.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public final class SPAAnalysis<I> {
+
+    private static final long INFINITY = Long.MAX_VALUE;
+    private static final int UNDEFINED = -1;
+
+    private final VPDAlphabet<I> alphabet;
+    private final int numInternals;
+    private final int numProceduralInputs;
+    private final int initialProcedure;
+
+    // global state indices: procedure p has the states offsets[p] ... offsets[p + 1] - 1
+    private final int[] offsets;
+    private final int[] procedureOfState;
+    private final int[] initialStates;
+    private final boolean[] accepting;
+    private final int[] transitions;
+
+    // results
+    private final long[] distances;
+    private final int[] choices;
+    private final boolean[] reachableProcedures;
+    private final boolean finite;
+
+    public SPAAnalysis(SPA<?, I> spa) {
+        this(spa.getInputAlphabet(), spa.getInitialProcedure(), spa.getProcedures());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param alphabet
+     *         the alphabet
+     * @param initialProcedure
+     *         the initial procedure, may be {@code null} if only the procedural analyses are of interest
+     * @param procedures
+     *         the procedures, i.e. a map from call symbols to DFAs over internal and call symbols
+     */
+    public SPAAnalysis(VPDAlphabet<I> alphabet,
+                       @Nullable I initialProcedure,
+                       Map<I, ? extends DFA<?, I>> procedures) {
+        this.alphabet = alphabet;
+        this.numInternals = alphabet.getNumInternals();
+        this.numProceduralInputs = numInternals + alphabet.getNumCalls();
+
+        final int numCalls = alphabet.getNumCalls();
+        this.offsets = new int[numCalls + 1];
+        this.initialStates = new int[numCalls];
+
+        for (int p = 0; p < numCalls; p++) {
+            final DFA<?, I> dfa = procedures.get(alphabet.getCallSymbol(p));
+            offsets[p + 1] = offsets[p] + (dfa == null ? 0 : dfa.size());
+        }
+
+        this.procedureOfState = new int[offsets[numCalls]];
+        this.accepting = new boolean[offsets[numCalls]];
+        this.transitions = new int[offsets[numCalls] * numProceduralInputs];
+
+        Arrays.fill(initialStates, UNDEFINED);
+        Arrays.fill(transitions, UNDEFINED);
+
+        // calls to undefined procedures are never successful. Note that (hypothesis) procedures may not even be defined
+        // for the call symbols of procedures that have not been discovered yet
+        final List<I> symbols = new ArrayList<>(numProceduralInputs);
+        symbols.addAll(alphabet.getInternalAlphabet());
+        for (final I call : alphabet.getCallAlphabet()) {
+            symbols.add(procedures.containsKey(call) ? call : null);
+        }
+
+        for (int p = 0; p < numCalls; p++) {
+            final DFA<?, I> dfa = procedures.get(alphabet.getCallSymbol(p));
+            if (dfa != null) {
+                Arrays.fill(procedureOfState, offsets[p], offsets[p + 1], p);
+                compileProcedure(p, dfa, symbols);
+            }
+        }
+
+        this.initialProcedure = initialProcedure == null || !procedures.containsKey(initialProcedure) ?
+                UNDEFINED :
+                alphabet.getCallSymbolIndex(initialProcedure);
+
+        this.distances = new long[accepting.length];
+        this.choices = new int[accepting.length];
+        this.reachableProcedures = new boolean[numCalls];
+
+        computeDistances();
+        this.finite = computeReachability();
+    }
+
+    private <S> void compileProcedure(int procedure, DFA<S, I> dfa, List<I> symbols) {
+        final StateIDs<S> stateIDs = dfa.stateIDs();
+        final int offset = offsets[procedure];
+        final S init = dfa.getInitialState();
+
+        if (init != null) {
+            initialStates[procedure] = offset + stateIDs.getStateId(init);
+        }
+
+        for (final S s : dfa.getStates()) {
+            final int id = offset + stateIDs.getStateId(s);
+            accepting[id] = dfa.isAccepting(s);
+
+            for (int i = 0; i < numProceduralInputs; i++) {
+                final I sym = symbols.get(i);
+                final S succ = sym == null ? null : dfa.getSuccessor(s, sym);
+                if (succ != null) {
+                    transitions[id * numProceduralInputs + i] = offset + stateIDs.getStateId(succ);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes for each state the length of the shortest (well-matched) word that leads to an accepting state of its
+     * procedure and stores the first transition of such a word as the choice of the state.
+     */
+    private void computeDistances() {
+        final int numStates = accepting.length;
+        final int numCalls = initialStates.length;
+
+        // reverse transitions in CSR layout, storing (source state * numProceduralInputs + input)
+        final int[] start = new int[numStates + 1];
+        for (final int succ : transitions) {
+            if (succ != UNDEFINED) {
+                start[succ + 1]++;
+            }
+        }
+        for (int s = 0; s < numStates; s++) {
+            start[s + 1] += start[s];
+        }
+
+        final int[] fill = Arrays.copyOf(start, numStates);
+        final int[] predecessors = new int[start[numStates]];
+        for (int t = 0; t < transitions.length; t++) {
+            if (transitions[t] != UNDEFINED) {
+                predecessors[fill[transitions[t]]++] = t;
+            }
+        }
+
+        // call transitions whose target has been settled, but whose callee has not (yet) been
+        final int[][] pendingCalls = new int[numCalls][];
+        final int[] numPendingCalls = new int[numCalls];
+
+        final IndexedHeap heap = new IndexedHeap(distances);
+        Arrays.fill(distances, INFINITY);
+        Arrays.fill(choices, UNDEFINED);
+
+        for (int s = 0; s < numStates; s++) {
+            if (accepting[s]) {
+                distances[s] = 0;
+                heap.insert(s);
+            }
+        }
+
+        while (!heap.isEmpty()) {
+            final int s = heap.poll();
+            final long dist = distances[s];
+
+            for (int i = start[s]; i < start[s + 1]; i++) {
+                final int t = predecessors[i];
+                final int input = t % numProceduralInputs;
+
+                if (input < numInternals) {
+                    relax(heap, t, dist, 1);
+                } else {
+                    final int callee = input - numInternals;
+                    final int calleeInit = initialStates[callee];
+
+                    if (calleeInit != UNDEFINED && heap.isSettled(calleeInit)) {
+                        relax(heap, t, dist, add(distances[calleeInit], 2));
+                    } else if (calleeInit != UNDEFINED) {
+                        if (pendingCalls[callee] == null) {
+                            pendingCalls[callee] = new int[4];
+                        } else if (numPendingCalls[callee] == pendingCalls[callee].length) {
+                            pendingCalls[callee] = Arrays.copyOf(pendingCalls[callee], numPendingCalls[callee] * 2);
+                        }
+                        pendingCalls[callee][numPendingCalls[callee]++] = t;
+                    }
+                }
+            }
+
+            // s may be the initial state of (exactly) one procedure, whose pending calls can now be relaxed
+            final int procedure = procedureOfState[s];
+            if (initialStates[procedure] == s && pendingCalls[procedure] != null) {
+                final long calleeDist = add(dist, 2);
+                for (int i = 0; i < numPendingCalls[procedure]; i++) {
+                    final int t = pendingCalls[procedure][i];
+                    relax(heap, t, distances[transitions[t]], calleeDist);
+                }
+                pendingCalls[procedure] = null;
+            }
+        }
+    }
+
+    private void relax(IndexedHeap heap, int transition, long targetDistance, long weight) {
+        final int source = transition / numProceduralInputs;
+        final long candidate = add(targetDistance, weight);
+
+        if (candidate < distances[source]) {
+            distances[source] = candidate;
+            choices[source] = transition % numProceduralInputs;
+            heap.update(source);
+        }
+    }
+
+    /**
+     * Explores the states that are reachable from the initial procedure and co-reachable (i.e. can be part of an
+     * accepted word) and checks the resulting graph for cycles.
+     *
+     * @return {@code true} if the language is finite, {@code false} otherwise
+     */
+    private boolean computeReachability() {
+        if (isEmpty()) {
+            return true;
+        }
+
+        final int numStates = accepting.length;
+        final boolean[] useful = new boolean[numStates];
+        final int[] inDegrees = new int[numStates];
+        final int[] worklist = new int[numStates];
+        int numUseful = 0;
+
+        reachableProcedures[initialProcedure] = true;
+        useful[initialStates[initialProcedure]] = true;
+        worklist[numUseful++] = initialStates[initialProcedure];
+
+        for (int i = 0; i < numUseful; i++) {
+            final int s = worklist[i];
+
+            for (int input = 0; input < numProceduralInputs; input++) {
+                final int succ = getUsefulSuccessor(s, input);
+                if (succ == UNDEFINED) {
+                    continue;
+                }
+
+                if (input >= numInternals) {
+                    final int callee = input - numInternals;
+                    final int calleeInit = initialStates[callee];
+                    reachableProcedures[callee] = true;
+                    inDegrees[calleeInit]++;
+                    if (!useful[calleeInit]) {
+                        useful[calleeInit] = true;
+                        worklist[numUseful++] = calleeInit;
+                    }
+                }
+
+                inDegrees[succ]++;
+                if (!useful[succ]) {
+                    useful[succ] = true;
+                    worklist[numUseful++] = succ;
+                }
+            }
+        }
+
+        // Kahn's algorithm: the useful states form a DAG iff all of them can be removed in topological order. Note that
+        // every edge (internal transitions, calls and the invocations of callees) consumes at least one symbol
+        int numRemoved = 0;
+        int numQueued = 0;
+
+        for (int i = 0; i < numUseful; i++) {
+            if (inDegrees[worklist[i]] == 0) {
+                worklist[numQueued++] = worklist[i];
+            }
+        }
+
+        // re-use the worklist as queue, since the useful states are no longer needed in order
+        while (numRemoved < numQueued) {
+            final int s = worklist[numRemoved++];
+
+            for (int input = 0; input < numProceduralInputs; input++) {
+                final int succ = getUsefulSuccessor(s, input);
+                if (succ == UNDEFINED) {
+                    continue;
+                }
+
+                if (input >= numInternals && --inDegrees[initialStates[input - numInternals]] == 0) {
+                    worklist[numQueued++] = initialStates[input - numInternals];
+                }
+                if (--inDegrees[succ] == 0) {
+                    worklist[numQueued++] = succ;
+                }
+            }
+        }
+
+        return numRemoved == numUseful;
+    }
+
+    private int getUsefulSuccessor(int state, int input) {
+        final int succ = transitions[state * numProceduralInputs + input];
+
+        if (succ == UNDEFINED || distances[succ] == INFINITY) {
+            return UNDEFINED;
+        }
+
+        if (input >= numInternals) {
+            final int calleeInit = initialStates[input - numInternals];
+            if (calleeInit == UNDEFINED || distances[calleeInit] == INFINITY) {
+                return UNDEFINED;
+            }
+        }
+
+        return succ;
+    }
+
+    private static long add(long a, long b) {
+        final long result = a + b;
+        return result < 0 ? INFINITY : result;
+    }
+
+    /**
+     * Returns whether the given procedure accepts at least one well-matched word, i.e. can terminate.
+     */
+    public boolean isProductive(I procedure) {
+        return getShortestTerminatingLength(procedure) != INFINITY;
+    }
+
+    /**
+     * Returns the set of productive procedures.
+     *
+     * @see #isProductive(Object)
+     */
+    public Set<I> getProductiveProcedures() {
+        final Set<I> result = Sets.newHashSetWithExpectedSize(initialStates.length);
+        for (int p = 0; p < initialStates.length; p++) {
+            if (initialStates[p] != UNDEFINED && distances[initialStates[p]] != INFINITY) {
+                result.add(alphabet.getCallSymbol(p));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the given procedure is invoked in at least one accepted word.
+     */
+    public boolean isReachable(I procedure) {
+        return reachableProcedures[alphabet.getCallSymbolIndex(procedure)];
+    }
+
+    /**
+     * Returns the set of reachable procedures.
+     *
+     * @see #isReachable(Object)
+     */
+    public Set<I> getReachableProcedures() {
+        final Set<I> result = Sets.newHashSetWithExpectedSize(initialStates.length);
+        for (int p = 0; p < initialStates.length; p++) {
+            if (reachableProcedures[p]) {
+                result.add(alphabet.getCallSymbol(p));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns whether the language of the SPA is empty.
+     */
+    public boolean isEmpty() {
+        return initialProcedure == UNDEFINED || initialStates[initialProcedure] == UNDEFINED ||
+               distances[initialStates[initialProcedure]] == INFINITY;
+    }
+
+    /**
+     * Returns whether the language of the SPA is finite.
+     */
+    public boolean isFinite() {
+        return finite;
+    }
+
+    /**
+     * Returns the length of the shortest terminating sequence of the given procedure, or {@link Long#MAX_VALUE} if the
+     * procedure is not productive (or the length exceeds the range of {@code long}).
+     */
+    public long getShortestTerminatingLength(I procedure) {
+        final int init = initialStates[alphabet.getCallSymbolIndex(procedure)];
+        return init == UNDEFINED ? INFINITY : distances[init];
+    }
+
+    /**
+     * Returns a shortest terminating sequence of the given procedure, i.e. a shortest well-matched word (containing
+     * the expanded sequences of nested invocations) that is accepted by the procedure.
+     *
+     * @param procedure
+     *         the procedure
+     *
+     * @return a shortest terminating sequence, or {@code null} if the procedure is not productive
+     */
+    @Nullable
+    public Word<I> getShortestTerminatingSequence(I procedure) {
+        final int init = initialStates[alphabet.getCallSymbolIndex(procedure)];
+
+        if (init == UNDEFINED || distances[init] == INFINITY) {
+            return null;
+        }
+
+        if (distances[init] > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The shortest terminating sequence is too long: " + distances[init]);
+        }
+
+        final WordBuilder<I> builder = new WordBuilder<>((int) distances[init]);
+        final I returnSymbol = alphabet.getReturnSymbol(0);
+
+        // the continuation states of the active invocations
+        int[] stack = new int[16];
+        int depth = 0;
+        int state = init;
+
+        while (true) {
+            if (distances[state] == 0) {
+                if (depth == 0) {
+                    break;
+                }
+                builder.append(returnSymbol);
+                state = stack[--depth];
+                continue;
+            }
+
+            final int input = choices[state];
+            final int succ = transitions[state * numProceduralInputs + input];
+
+            if (input < numInternals) {
+                builder.append(alphabet.getInternalSymbol(input));
+                state = succ;
+            } else {
+                builder.append(alphabet.getCallSymbol(input - numInternals));
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = succ;
+                state = initialStates[input - numInternals];
+            }
+        }
+
+        return builder.toWord();
+    }
+
+    /**
+     * Returns the shortest terminating sequences of all productive procedures.
+     *
+     * @see #getShortestTerminatingSequence(Object)
+     */
+    public Map<I, Word<I>> getTerminatingSequences() {
+        final Map<I, Word<I>> result = Maps.newHashMapWithExpectedSize(initialStates.length);
+        for (int p = 0; p < initialStates.length; p++) {
+            final I procedure = alphabet.getCallSymbol(p);
+            final Word<I> ts = getShortestTerminatingSequence(procedure);
+            if (ts != null) {
+                result.put(procedure, ts);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a shortest accepted word of the SPA, or {@code null} if the language is empty.
+     */
+    @Nullable
+    public Word<I> getShortestAcceptedWord() {
+        if (isEmpty()) {
+            return null;
+        }
+
+        final I procedure = alphabet.getCallSymbol(initialProcedure);
+        final Word<I> ts = getShortestTerminatingSequence(procedure);
+        assert ts != null;
+
+        return Word.fromLetter(procedure).concat(ts).append(alphabet.getReturnSymbol(0));
+    }
+
+    @Override
+    public String toString() {
+        return "SPAAnalysis{productive=" + getProductiveProcedures() + ", reachable=" + getReachableProcedures() +
+               ", empty=" + isEmpty() + ", finite=" + isFinite() + '}';
+    }
+
+    /**
+     * A binary min-heap of int elements (states), ordered by the values of an external array (the distances) and
+     * supporting the decrease of values. Elements that have been polled are settled and never re-inserted.
+     */
+    private static final class IndexedHeap {
+
+        private static final int NOT_INSERTED = -1;
+        private static final int SETTLED = -2;
+
+        private final long[] keys;
+        private final int[] positions;
+        private final int[] heap;
+        private int size;
+
+        IndexedHeap(long[] keys) {
+            this.keys = keys;
+            this.positions = new int[keys.length];
+            this.heap = new int[keys.length];
+            Arrays.fill(positions, NOT_INSERTED);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        boolean isSettled(int element) {
+            return positions[element] == SETTLED;
+        }
+
+        void insert(int element) {
+            heap[size] = element;
+            positions[element] = size;
+            siftUp(size++);
+        }
+
+        /**
+         * Inserts the given element or restores the heap property after its key has been decreased.
+         */
+        void update(int element) {
+            if (positions[element] == NOT_INSERTED) {
+                insert(element);
+            } else {
+                siftUp(positions[element]);
+            }
+        }
+
+        int poll() {
+            final int result = heap[0];
+            positions[result] = SETTLED;
+
+            if (--size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                siftDown(0);
+            }
+
+            return result;
+        }
+
+        private void siftUp(int index) {
+            final int element = heap[index];
+            int i = index;
+
+            while (i > 0) {
+                final int parent = (i - 1) >>> 1;
+                if (keys[heap[parent]] <= keys[element]) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                positions[heap[i]] = i;
+                i = parent;
+            }
+
+            heap[i] = element;
+            positions[element] = i;
+        }
+
+        private void siftDown(int index) {
+            final int element = heap[index];
+            int i = index;
+
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                    child++;
+                }
+                if (keys[element] <= keys[heap[child]]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                positions[heap[i]] = i;
+                i = child;
+            }
+
+            heap[i] = element;
+            positions[element] = i;
+        }
+    }
+}
@@ -19,6 +19,8 @@ import java.util.Map;
 import java.util.Set;
 
 import de.learnlib.api.AccessSequenceTransformer;
+import de.learnlib.spa.InvocationTree;
+import de.learnlib.spa.TransformationUtil;
 import net.automatalib.automata.fsa.DFA;
 import net.automatalib.words.Word;
 
@@ -28,10 +30,35 @@ public interface ATRProvider<I> {
 
     Word<I> getTerminatingSequence(I procedure);
 
+    /**
+     * Returns the terminating sequence of the given procedure embedded in its call and return symbol (see {@link
+     * TransformationUtil#embed(Object, Word)}). The default implementation creates a new word on each invocation,
+     * implementations that frequently change their terminating sequences may override this method to return cached
+     * embeddings.
+     *
+     * @param procedure
+     *         the call symbol of the procedure
+     * @param transformationUtil
+     *         the transformation utility for the alphabet of this provider, which performs the embedding
+     *
+     * @return the embedded terminating sequence
+     */
+    default Word<I> getEmbeddedTerminatingSequence(I procedure, TransformationUtil<I> transformationUtil) {
+        return transformationUtil.embed(procedure, getTerminatingSequence(procedure));
+    }
+
     Word<I> getReturnSequence(I procedure);
 
     Set<I> scanPositiveCounterexample(Word<I> counterexample);
 
+    /**
+     * Variant of {@link #scanPositiveCounterexample(Word)} for counterexamples whose invocations have already been
+     * indexed, so that implementations do not need to re-compute matching call and return symbols.
+     */
+    default Set<I> scanPositiveCounterexample(InvocationTree<I> counterexample) {
+        return scanPositiveCounterexample(counterexample.getWord());
+    }
+
     /**
      * @param procedures
      *
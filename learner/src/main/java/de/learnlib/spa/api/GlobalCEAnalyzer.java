@@ -0,0 +1,137 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.api;
+
+/**
+ * A strategy for the global analysis of negative counterexamples, i.e. for locating the procedure invocation that is
+ * responsible for the rejection of a counterexample.
+ * <p>
+ * The invocations of a counterexample are identified by the positions of their return symbols. For each position, the
+ * counterexample can be decomposed by replacing all invocations up to (and including) this position with their
+ * hypothesis-conforming counterparts. The decomposition at position {@code low} is known to be rejected (it is the
+ * counterexample itself) and the decomposition at position {@code high} is known to be accepted. An analyzer needs to
+ * find a breakpoint, i.e. a position {@code i} whose decomposition is accepted while the decomposition at {@code i - 1}
+ * is rejected.
+ * <p>
+ * An analyzer does not pose queries itself. Instead, {@link #start(int, int)} returns an {@link Analysis} that is
+ * driven step by step: it exposes the positions it needs to test next and continues once their answers are provided.
+ * This allows the caller to decide how the decompositions are tested, e.g. to merge the probes of several analyses
+ * into a single batch (see {@link #analyze(Decompositions, int, int)} for the straightforward driver).
+ *
+ * @see de.learnlib.spa.impl.GlobalCEAnalyzers
+ */
+@FunctionalInterface
+public interface GlobalCEAnalyzer {
+
+    /**
+     * Starts the analysis of the given range.
+     *
+     * @param low
+     *         a position whose decomposition is rejected
+     * @param high
+     *         a position whose decomposition is accepted, {@code high > low}
+     *
+     * @return the (possibly already finished) analysis
+     */
+    Analysis start(int low, int high);
+
+    /**
+     * Finds a breakpoint between the given positions, by testing the positions requested by the analysis (see {@link
+     * #start(int, int)}) in one batch per step.
+     *
+     * @param decompositions
+     *         the decompositions of the counterexample
+     * @param low
+     *         a position whose decomposition is rejected
+     * @param high
+     *         a position whose decomposition is accepted, {@code high > low}
+     *
+     * @return a position {@code i} with {@code low < i <= high}, whose decomposition is accepted while the
+     * decomposition at {@code i - 1} is rejected
+     */
+    default int analyze(Decompositions decompositions, int low, int high) {
+        final Analysis analysis = start(low, high);
+
+        while (!analysis.isFinished()) {
+            analysis.processAnswers(decompositions.accepts(analysis.getPositions()));
+        }
+
+        return analysis.getResult();
+    }
+
+    /**
+     * A single (stepwise) analysis of a counterexample.
+     */
+    interface Analysis {
+
+        /**
+         * Returns whether the analysis has found a breakpoint.
+         *
+         * @return {@code true} if the analysis is finished, {@code false} otherwise
+         */
+        boolean isFinished();
+
+        /**
+         * Returns the positions whose decompositions need to be tested in the next step.
+         *
+         * @return the (non-empty) positions to test
+         *
+         * @throws IllegalStateException
+         *         if the analysis is already finished
+         */
+        int[] getPositions();
+
+        /**
+         * Continues the analysis with the answers for the positions of the current step.
+         *
+         * @param answers
+         *         for each position of {@link #getPositions()}, whether its decomposition is accepted
+         *
+         * @throws IllegalStateException
+         *         if the analysis is already finished
+         * @throws IllegalArgumentException
+         *         if the number of answers does not match the number of positions
+         */
+        void processAnswers(boolean... answers);
+
+        /**
+         * Returns the found breakpoint.
+         *
+         * @return a position {@code i} with {@code low < i <= high}, whose decomposition is accepted while the
+         * decomposition at {@code i - 1} is rejected
+         *
+         * @throws IllegalStateException
+         *         if the analysis is not finished yet
+         */
+        int getResult();
+    }
+
+    /**
+     * The decompositions of a counterexample.
+     */
+    @FunctionalInterface
+    interface Decompositions {
+
+        /**
+         * Tests the decompositions at the given positions, which are posed to the system as a single batch.
+         *
+         * @param positions
+         *         the positions to test
+         *
+         * @return for each position, whether its decomposition is accepted
+         */
+        boolean[] accepts(int... positions);
+    }
+}
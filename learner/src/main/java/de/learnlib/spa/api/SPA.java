@@ -14,6 +14,8 @@
  */
 package de.learnlib.spa.api;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nullable;
@@ -23,6 +25,7 @@ import net.automatalib.automata.concepts.SuffixOutput;
 import net.automatalib.automata.fsa.DFA;
 import net.automatalib.graphs.concepts.GraphViewable;
 import net.automatalib.ts.acceptors.DeterministicAcceptorTS;
+import net.automatalib.words.Word;
 
 /**
  * A system of procedural automata.
@@ -49,4 +52,64 @@ public interface SPA<S, I>
     default Boolean computeOutput(Iterable<? extends I> input) {
         return this.accepts(input);
     }
+
+    /**
+     * Determines (in a single pass) the first invocation of the given input, whose local word (i.e. the word of the
+     * invocation with nested invocations replaced by their call symbols) is rejected by its procedure. Invocations are
+     * ordered by their return symbols, and invocations of procedures that do not exist are always rejected. Invocations
+     * that are not completed by the input are not considered.
+     * <p>
+     * For a well-matched, rooted input, the SPA rejects the input if (and only if) such an invocation exists or the
+     * input does not start with the initial procedure.
+     *
+     * @param input
+     *         the input, where every symbol needs to be part of an invocation
+     *
+     * @return the index of the return symbol of the rejected invocation, or {@code -1} if all (completed) invocations
+     * are accepted by their procedures
+     *
+     * @throws IllegalArgumentException
+     *         if the input contains symbols outside of an invocation
+     */
+    @SuppressWarnings("unchecked")
+    default int findRejectedInvocation(Word<I> input) {
+        final SPAAlphabet<I> alphabet = getInputAlphabet();
+        final Map<I, DFA<?, I>> procedures = getProcedures();
+
+        // the procedures and current states (null if undefined) of the active invocations
+        final List<DFA<Object, I>> models = new ArrayList<>();
+        final List<Object> states = new ArrayList<>();
+
+        for (int i = 0; i < input.size(); i++) {
+            final I sym = input.getSymbol(i);
+            final int top = models.size() - 1;
+
+            if (top < 0 && !alphabet.isCallSymbol(sym)) {
+                throw new IllegalArgumentException("Symbol '" + sym + "' at index " + i + " is not part of a call");
+            }
+
+            if (alphabet.isReturnSymbol(sym)) {
+                final DFA<Object, I> model = models.remove(top);
+                final Object state = states.remove(top);
+
+                if (model == null || state == null || !model.isAccepting(state)) {
+                    return i;
+                }
+            } else {
+                if (top >= 0) {
+                    final DFA<Object, I> model = models.get(top);
+                    final Object state = states.get(top);
+                    states.set(top, model == null || state == null ? null : model.getSuccessor(state, sym));
+                }
+
+                if (alphabet.isCallSymbol(sym)) {
+                    final DFA<Object, I> callee = (DFA<Object, I>) procedures.get(sym);
+                    models.add(callee);
+                    states.add(callee == null ? null : callee.getInitialState());
+                }
+            }
+        }
+
+        return -1;
+    }
 }
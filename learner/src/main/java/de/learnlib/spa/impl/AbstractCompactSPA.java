@@ -0,0 +1,587 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Maps;
+import de.learnlib.api.oracle.QueryAnswerer;
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import de.learnlib.spa.view.ReachabilityView;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.automata.fsa.impl.compact.CompactDFA;
+import net.automatalib.graphs.Graph;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.impl.SimpleAlphabet;
+
+/**
+ * Base class for int-indexed representations of a System of Procedural Automata. Procedures are identified by the
+ * index of their call symbol and the symbols of the procedural alphabet by an int code (internal symbols followed by
+ * call symbols, see {@link #getSymbolCode(Object)}). Sub-classes only need to provide the (int-based) transition
+ * structure of the procedures, whereas this class implements the SPA semantics on top of it: Membership queries are
+ * answered by an int-array based stack machine that does not allocate any objects per processed symbol.
+ * <p>
+ * The transition system view ({@link #getTransition(State, Object)}) is provided for compatibility with the {@link SPA}
+ * interface and mirrors the semantics of {@link DefaultSPA}.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public abstract class AbstractCompactSPA<I> implements SPA<State<I, Integer>, I>, QueryAnswerer<I, Boolean> {
+
+    protected static final int UNDEFINED = -1;
+    private static final int DEFAULT_STACK_CAPACITY = 16;
+
+    private final State<I, Integer> init = new State<I, Integer>(null, null) {
+
+        @Override
+        public String toString() {
+            return "init";
+        }
+    };
+
+    private final State<I, Integer> sink = new State<I, Integer>(null, null) {
+
+        @Override
+        public String toString() {
+            return "sink";
+        }
+    };
+
+    private final State<I, Integer> terminatingState = new State<I, Integer>(null, null) {
+
+        @Override
+        public String toString() {
+            return "acc";
+        }
+    };
+
+    private final SPAAlphabet<I> alphabet;
+    private final I initialProcedure;
+    private final int initialProcedureId;
+
+    private final int numInternals;
+    private final int numProceduralInputs;
+    private final int returnCode;
+    private final Map<I, Integer> symbolCodes;
+
+    private volatile Map<I, CompactDFA<I>> procedures;
+
+    protected AbstractCompactSPA(SPAAlphabet<I> alphabet, @Nullable I initialProcedure) {
+        this.alphabet = alphabet;
+        this.initialProcedure = initialProcedure;
+        this.initialProcedureId = initialProcedure == null ? UNDEFINED : alphabet.getCallSymbolIndex(initialProcedure);
+
+        this.numInternals = alphabet.getNumInternals();
+        this.numProceduralInputs = numInternals + alphabet.getNumCalls();
+        this.returnCode = numProceduralInputs;
+
+        this.symbolCodes = Maps.newHashMapWithExpectedSize(numProceduralInputs + 1);
+        for (int i = 0; i < numInternals; i++) {
+            symbolCodes.put(alphabet.getInternalSymbol(i), i);
+        }
+        for (int i = 0; i < alphabet.getNumCalls(); i++) {
+            symbolCodes.put(alphabet.getCallSymbol(i), numInternals + i);
+        }
+        symbolCodes.put(alphabet.getReturnSymbol(), returnCode);
+    }
+
+    /**
+     * Returns whether there exists a procedure for the given id.
+     */
+    public abstract boolean hasProcedure(int procedure);
+
+    /**
+     * Returns the number of states of the given procedure, or {@code 0} if there exists no procedure for the given id.
+     */
+    public abstract int getNumStates(int procedure);
+
+    /**
+     * Returns the initial state of the given procedure, or {@code -1} if there exists no procedure for the given id (or
+     * the procedure has no initial state).
+     */
+    public abstract int getIntInitialState(int procedure);
+
+    /**
+     * Returns the successor of the given state of the given procedure for the given procedural input code (i.e. an
+     * internal or call symbol), or {@code -1} if the transition is undefined.
+     */
+    public abstract int getIntSuccessor(int procedure, int state, int code);
+
+    public abstract boolean isIntAccepting(int procedure, int state);
+
+    private int encode(I symbol) {
+        final Integer code = symbolCodes.get(symbol);
+        return code == null ? UNDEFINED : code;
+    }
+
+    /**
+     * Returns the int code of the given symbol. Internal symbols are mapped to {@code [0, numInternals)}, call symbols
+     * to {@code [numInternals, numProceduralInputs)} (in the order of their call symbol index) and the return symbol to
+     * {@link #getReturnCode()}.
+     *
+     * @param symbol
+     *         the symbol
+     *
+     * @return the code of the given symbol, or {@code -1} if the symbol is not part of the alphabet
+     */
+    public int getSymbolCode(I symbol) {
+        return encode(symbol);
+    }
+
+    public int getNumInternals() {
+        return this.numInternals;
+    }
+
+    public int getNumProceduralInputs() {
+        return this.numProceduralInputs;
+    }
+
+    public int getReturnCode() {
+        return this.returnCode;
+    }
+
+    /**
+     * Returns the number of procedure ids, i.e. the size of the call alphabet. Note that not every id needs to have a
+     * corresponding procedure (see {@link #getIntInitialState(int)}).
+     */
+    public int getNumProcedureIds() {
+        return this.alphabet.getNumCalls();
+    }
+
+    /**
+     * Returns the id of the initial procedure, or {@code -1} if this SPA has no initial procedure.
+     */
+    public int getInitialProcedureId() {
+        return this.initialProcedureId;
+    }
+
+    /**
+     * Computes for each procedure the states from which an accepting state can be reached, using internal transitions
+     * and call transitions to terminating procedures (i.e. procedures whose initial state is co-reachable). Each
+     * transition is inspected at most twice: once when its target becomes co-reachable and (for call transitions) once
+     * when the callee becomes terminating.
+     *
+     * @return for each procedure id, the co-reachability of each state (empty arrays for ids without a procedure)
+     */
+    public boolean[][] computeCoReachableStates() {
+        final int numIds = getNumProcedureIds();
+        final int numInputs = this.numProceduralInputs;
+
+        final boolean[][] result = new boolean[numIds][];
+        // predecessors in CSR format: the (source, input) pairs of target state t are stored in [start[t], start[t+1])
+        final int[][] predStart = new int[numIds][];
+        final int[][] predSource = new int[numIds][];
+        final int[][] predInput = new int[numIds][];
+
+        // pending call transitions, indexed by callee, stored as (procedure, state) pairs
+        final int[][] pending = new int[numIds][];
+        final int[] numPending = new int[numIds];
+
+        // worklist of (procedure, state) pairs that became co-reachable
+        int[] worklist = new int[16];
+        int worklistSize = 0;
+
+        for (int p = 0; p < numIds; p++) {
+            final int size = getNumStates(p);
+            result[p] = new boolean[size];
+
+            final int[] start = new int[size + 1];
+            for (int s = 0; s < size; s++) {
+                for (int i = 0; i < numInputs; i++) {
+                    final int succ = getIntSuccessor(p, s, i);
+                    if (succ >= 0) {
+                        start[succ + 1]++;
+                    }
+                }
+            }
+            for (int s = 0; s < size; s++) {
+                start[s + 1] += start[s];
+            }
+
+            final int[] fill = Arrays.copyOf(start, size);
+            final int[] sources = new int[start[size]];
+            final int[] inputs = new int[start[size]];
+
+            for (int s = 0; s < size; s++) {
+                for (int i = 0; i < numInputs; i++) {
+                    final int succ = getIntSuccessor(p, s, i);
+                    if (succ >= 0) {
+                        sources[fill[succ]] = s;
+                        inputs[fill[succ]] = i;
+                        fill[succ]++;
+                    }
+                }
+            }
+
+            predStart[p] = start;
+            predSource[p] = sources;
+            predInput[p] = inputs;
+            pending[p] = new int[0];
+
+            for (int s = 0; s < size; s++) {
+                if (isIntAccepting(p, s)) {
+                    result[p][s] = true;
+                    if (worklistSize == worklist.length) {
+                        worklist = Arrays.copyOf(worklist, worklistSize * 2);
+                    }
+                    worklist[worklistSize++] = p;
+                    worklist[worklistSize++] = s;
+                }
+            }
+        }
+
+        while (worklistSize > 0) {
+            final int s = worklist[--worklistSize];
+            final int p = worklist[--worklistSize];
+
+            if (s == getIntInitialState(p)) {
+                // p became terminating, release all call transitions that waited for it
+                final int[] released = pending[p];
+                final int numReleased = numPending[p];
+                pending[p] = null;
+
+                for (int i = 0; i < numReleased; i += 2) {
+                    final int caller = released[i];
+                    final int callerState = released[i + 1];
+                    if (!result[caller][callerState]) {
+                        result[caller][callerState] = true;
+                        if (worklistSize + 2 > worklist.length) {
+                            worklist = Arrays.copyOf(worklist, worklist.length * 2);
+                        }
+                        worklist[worklistSize++] = caller;
+                        worklist[worklistSize++] = callerState;
+                    }
+                }
+            }
+
+            final int[] start = predStart[p];
+            for (int i = start[s]; i < start[s + 1]; i++) {
+                final int pred = predSource[p][i];
+                if (result[p][pred]) {
+                    continue;
+                }
+
+                final int input = predInput[p][i];
+                final int callee = input - numInternals;
+
+                if (input >= numInternals && pending[callee] != null) {
+                    // callee not (yet) terminating
+                    if (numPending[callee] + 2 > pending[callee].length) {
+                        pending[callee] = Arrays.copyOf(pending[callee], Math.max(4, pending[callee].length * 2));
+                    }
+                    pending[callee][numPending[callee]++] = p;
+                    pending[callee][numPending[callee]++] = pred;
+                } else {
+                    result[p][pred] = true;
+                    if (worklistSize + 2 > worklist.length) {
+                        worklist = Arrays.copyOf(worklist, worklist.length * 2);
+                    }
+                    worklist[worklistSize++] = p;
+                    worklist[worklistSize++] = pred;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean accepts(Iterable<? extends I> input) {
+        return accepts(input, null);
+    }
+
+    @Override
+    public Boolean computeSuffixOutput(Iterable<? extends I> prefix, Iterable<? extends I> suffix) {
+        return computeSuffixOutput(prefix, suffix, null);
+    }
+
+    /**
+     * Answers a membership query. If co-reachable states (see {@link #computeCoReachableStates()}) are given, the
+     * simulation rejects as soon as the configuration can no longer be completed to an accepted word.
+     */
+    boolean accepts(Iterable<? extends I> input, @Nullable boolean[][] coReachable) {
+        if (initialProcedureId == UNDEFINED) {
+            return false;
+        }
+
+        final Run run = new Run(coReachable);
+        return run.process(input) && run.isTerminated();
+    }
+
+    /**
+     * The two-part variant of {@link #accepts(Iterable, boolean[][])}.
+     */
+    Boolean computeSuffixOutput(Iterable<? extends I> prefix,
+                                Iterable<? extends I> suffix,
+                                @Nullable boolean[][] coReachable) {
+        if (initialProcedureId == UNDEFINED) {
+            return false;
+        }
+
+        final Run run = new Run(coReachable);
+        return run.process(prefix) && run.process(suffix) && run.isTerminated();
+    }
+
+    @Nullable
+    @Override
+    public Boolean answerQuery(Word<I> prefix, Word<I> suffix) {
+        return this.computeSuffixOutput(prefix, suffix);
+    }
+
+    @Override
+    public State<I, Integer> getTransition(State<I, Integer> state, I input) {
+        if (this.initialProcedureId == UNDEFINED || this.sink == state || this.terminatingState == state) {
+            return sink;
+        }
+
+        final int code = encode(input);
+
+        if (code == UNDEFINED) {
+            return sink;
+        } else if (code < numInternals) {
+            if (state == init) {
+                return sink;
+            }
+
+            final int procedureId = alphabet.getCallSymbolIndex(state.getFirst());
+            final int next = getIntSuccessor(procedureId, state.getSecond(), code);
+
+            return next == UNDEFINED ? sink : new State<>(state.getFirst(), next, state.getPersistentStack());
+        } else if (code < numProceduralInputs) {
+            final int next = getIntInitialState(code - numInternals);
+
+            return next == UNDEFINED ? sink : new State<>(input, next, state.getPersistentStack(), state);
+        } else {
+            if (state == init) {
+                return sink;
+            }
+
+            final int procedureId = alphabet.getCallSymbolIndex(state.getFirst());
+
+            if (!isIntAccepting(procedureId, state.getSecond())) {
+                return sink;
+            }
+
+            final State<I, Integer> previousState = state.getPersistentStack().peek();
+
+            if (previousState == init) {
+                return procedureId == initialProcedureId ? terminatingState : sink;
+            }
+
+            final int previousId = alphabet.getCallSymbolIndex(previousState.getFirst());
+            final int next = getIntSuccessor(previousId, previousState.getSecond(), numInternals + procedureId);
+
+            return next == UNDEFINED ?
+                    sink :
+                    new State<>(previousState.getFirst(), next, previousState.getPersistentStack());
+        }
+    }
+
+    @Override
+    public boolean isAccepting(State<I, Integer> state) {
+        return this.terminatingState == state;
+    }
+
+    @Override
+    public State<I, Integer> getInitialState() {
+        return this.init;
+    }
+
+    @Nullable
+    @Override
+    public I getInitialProcedure() {
+        return this.initialProcedure;
+    }
+
+    @Override
+    public SPAAlphabet<I> getInputAlphabet() {
+        return this.alphabet;
+    }
+
+    /**
+     * Returns the procedures of this SPA as {@link CompactDFA}s over the procedural alphabet (internal symbols followed
+     * by call symbols). The automata are created upon the first invocation.
+     */
+    @Override
+    public Map<I, DFA<?, I>> getProcedures() {
+        return Collections.unmodifiableMap(getCompactProcedures());
+    }
+
+    @Override
+    public Graph<?, ?> graphView() {
+        return new ReachabilityView<>(alphabet, getCompactProcedures());
+    }
+
+    private Map<I, CompactDFA<I>> getCompactProcedures() {
+        Map<I, CompactDFA<I>> result = this.procedures;
+
+        if (result == null) {
+            synchronized (this) {
+                result = this.procedures;
+                if (result == null) {
+                    result = createProcedures();
+                    this.procedures = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private Map<I, CompactDFA<I>> createProcedures() {
+        final Alphabet<I> proceduralAlphabet = new SimpleAlphabet<>();
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+        proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+
+        final Map<I, CompactDFA<I>> result = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
+
+        for (int p = 0; p < alphabet.getNumCalls(); p++) {
+            if (!hasProcedure(p)) {
+                continue;
+            }
+
+            final int size = getNumStates(p);
+            final CompactDFA<I> dfa = new CompactDFA<>(proceduralAlphabet, size);
+
+            for (int s = 0; s < size; s++) {
+                dfa.addIntState(isIntAccepting(p, s));
+            }
+
+            for (int s = 0; s < size; s++) {
+                for (int i = 0; i < numProceduralInputs; i++) {
+                    final int succ = getIntSuccessor(p, s, i);
+                    if (succ != UNDEFINED) {
+                        dfa.setTransition(s, i, succ);
+                    }
+                }
+            }
+
+            final int init = getIntInitialState(p);
+            if (init != UNDEFINED) {
+                dfa.setInitialState(init);
+            }
+
+            result.put(alphabet.getCallSymbol(p), dfa);
+        }
+
+        return result;
+    }
+
+    /**
+     * A single simulation run. The call stack stores pairs of (procedure id, state id) in a flat int array, where a
+     * procedure id of {@link #UNDEFINED} denotes the (implicit) initial configuration.
+     */
+    private final class Run {
+
+        private final boolean[][] coReachable;
+
+        private int[] stack = new int[DEFAULT_STACK_CAPACITY * 2];
+        private int stackSize;
+
+        private int procedure = UNDEFINED;
+        private int state = UNDEFINED;
+        private boolean terminated;
+
+        Run(@Nullable boolean[][] coReachable) {
+            this.coReachable = coReachable;
+        }
+
+        boolean process(Iterable<? extends I> input) {
+            for (final I sym : input) {
+                if (!step(encode(sym))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean step(int code) {
+            if (code == UNDEFINED || terminated) {
+                return false;
+            } else if (code < numInternals) {
+                if (procedure == UNDEFINED) {
+                    return false;
+                }
+
+                state = getIntSuccessor(procedure, state, code);
+                return state != UNDEFINED && (coReachable == null || coReachable[procedure][state]);
+            } else if (code < numProceduralInputs) {
+                final int callee = code - numInternals;
+                final int next = getIntInitialState(callee);
+
+                if (next == UNDEFINED || (coReachable != null && !canCall(callee, next))) {
+                    return false;
+                }
+
+                if (stackSize == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+
+                stack[stackSize++] = procedure;
+                stack[stackSize++] = state;
+
+                procedure = callee;
+                state = next;
+                return true;
+            } else {
+                if (procedure == UNDEFINED || !isIntAccepting(procedure, state)) {
+                    return false;
+                }
+
+                final int previousState = stack[--stackSize];
+                final int previousProcedure = stack[--stackSize];
+
+                if (previousProcedure == UNDEFINED) {
+                    terminated = procedure == initialProcedureId;
+                    return terminated;
+                }
+
+                state = getIntSuccessor(previousProcedure, previousState, numInternals + procedure);
+                procedure = previousProcedure;
+                return state != UNDEFINED;
+            }
+        }
+
+        boolean isTerminated() {
+            return terminated;
+        }
+
+        /**
+         * Checks whether the given procedure can be invoked in the current configuration such that it can still be
+         * completed to an accepted word.
+         */
+        private boolean canCall(int callee, int calleeInit) {
+            if (!coReachable[callee][calleeInit]) {
+                return false;
+            }
+
+            if (procedure == UNDEFINED) {
+                return callee == initialProcedureId;
+            }
+
+            final int succ = getIntSuccessor(procedure, state, numInternals + callee);
+            return succ != UNDEFINED && coReachable[procedure][succ];
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.impl.SimpleAlphabet;
+
+/**
+ * A versioned binary format for SPAs. All values are stored in big-endian byte order:
+ * <pre>
+ * int   magic number, int version
+ * int   number of internal symbols, int number of call symbols, int initial procedure id (-1 if undefined)
+ * for each internal symbol, call symbol and the return symbol (in this order):
+ *       int length, UTF-8 encoded bytes
+ * padding to a multiple of 4 bytes
+ * for each procedure id (i.e. call symbol index):
+ *       int number of states (-1 if there is no procedure), int initial state, int offset of the procedure data
+ * for each procedure:
+ *       int[number of states * number of procedural inputs] transition table (-1 for undefined transitions)
+ *       byte[number of states] acceptance, padding to a multiple of 4 bytes
+ * </pre>
+ * The transition table of a procedure is indexed by {@code state * numProceduralInputs + code}, where {@code code} is
+ * the int code of the symbol as defined by {@link AbstractCompactSPA#getSymbolCode(Object)}.
+ * <p>
+ * Loading a file maps it into memory and returns a {@link MappedSPA} that simulates directly on the mapped buffer, so
+ * that (large) models are available without copying their transitions. The header, the procedure table and all
+ * transition targets are validated once upon loading, so that corrupt files are rejected with an {@link IOException}
+ * instead of failing during simulation.
+ *
+ * @author frohme
+ */
+public final class BinarySPAFormat {
+
+    /**
+     * "SPA" followed by a zero byte.
+     */
+    public static final int MAGIC = 0x53504100;
+    public static final int VERSION = 1;
+
+    static final int NO_PROCEDURE = -1;
+
+    private static final int HEADER_SIZE = 20;
+    private static final int TABLE_ENTRY_SIZE = 12;
+
+    private BinarySPAFormat() {
+        // prevent instantiation
+    }
+
+    /**
+     * Writes the given SPA to the given file.
+     *
+     * @param spa
+     *         the SPA to write
+     * @param path
+     *         the file to write to
+     * @param symbolEncoder
+     *         the function for converting symbols to strings
+     * @param <I>
+     *         input symbol type
+     *
+     * @throws IOException
+     *         if writing to the file fails
+     */
+    public static <I> void write(SPA<?, I> spa, Path path, Function<? super I, String> symbolEncoder)
+            throws IOException {
+
+        final AbstractCompactSPA<I> compactSPA = CompactSPA.of(spa);
+        final SPAAlphabet<I> alphabet = compactSPA.getInputAlphabet();
+        final int numInternals = alphabet.getNumInternals();
+        final int numCalls = alphabet.getNumCalls();
+        final int numInputs = compactSPA.getNumProceduralInputs();
+
+        final List<byte[]> symbols = new ArrayList<>(numInputs + 1);
+        for (final I i : alphabet.getInternalAlphabet()) {
+            symbols.add(symbolEncoder.apply(i).getBytes(StandardCharsets.UTF_8));
+        }
+        for (final I i : alphabet.getCallAlphabet()) {
+            symbols.add(symbolEncoder.apply(i).getBytes(StandardCharsets.UTF_8));
+        }
+        symbols.add(symbolEncoder.apply(alphabet.getReturnSymbol()).getBytes(StandardCharsets.UTF_8));
+
+        long symbolsSize = 0;
+        for (final byte[] s : symbols) {
+            symbolsSize += 4 + s.length;
+        }
+
+        final long tableOffset = align(HEADER_SIZE + symbolsSize);
+        long offset = tableOffset + (long) TABLE_ENTRY_SIZE * numCalls;
+
+        final int[] offsets = new int[numCalls];
+        for (int p = 0; p < numCalls; p++) {
+            if (compactSPA.hasProcedure(p)) {
+                final long size = compactSPA.getNumStates(p);
+                offsets[p] = (int) offset;
+                offset += align(size * numInputs * 4 + size);
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("SPA is too large for the binary format");
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numInternals);
+            out.writeInt(numCalls);
+            out.writeInt(compactSPA.getInitialProcedureId());
+
+            for (final byte[] s : symbols) {
+                out.writeInt(s.length);
+                out.write(s);
+            }
+            pad(out, HEADER_SIZE + symbolsSize);
+
+            for (int p = 0; p < numCalls; p++) {
+                if (compactSPA.hasProcedure(p)) {
+                    out.writeInt(compactSPA.getNumStates(p));
+                    out.writeInt(compactSPA.getIntInitialState(p));
+                    out.writeInt(offsets[p]);
+                } else {
+                    out.writeInt(NO_PROCEDURE);
+                    out.writeInt(NO_PROCEDURE);
+                    out.writeInt(0);
+                }
+            }
+
+            for (int p = 0; p < numCalls; p++) {
+                if (!compactSPA.hasProcedure(p)) {
+                    continue;
+                }
+
+                final int size = compactSPA.getNumStates(p);
+
+                for (int s = 0; s < size; s++) {
+                    for (int i = 0; i < numInputs; i++) {
+                        out.writeInt(compactSPA.getIntSuccessor(p, s, i));
+                    }
+                }
+                for (int s = 0; s < size; s++) {
+                    out.writeByte(compactSPA.isIntAccepting(p, s) ? 1 : 0);
+                }
+                pad(out, size);
+            }
+        }
+    }
+
+    /**
+     * Maps the given file into memory and returns an SPA that is backed by the mapped buffer.
+     *
+     * @param path
+     *         the file to load
+     * @param symbolDecoder
+     *         the function for converting strings to symbols
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the SPA backed by the given file
+     *
+     * @throws IOException
+     *         if reading the file fails or the file is not a (supported) binary SPA
+     */
+    public static <I> MappedSPA<I> load(Path path, Function<String, ? extends I> symbolDecoder) throws IOException {
+        final MappedByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large: " + channel.size());
+            }
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        return load(buffer, symbolDecoder);
+    }
+
+    /**
+     * Returns an SPA that is backed by the given buffer.
+     *
+     * @param data
+     *         the buffer containing the SPA in the binary format, starting at index 0
+     * @param symbolDecoder
+     *         the function for converting strings to symbols
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the SPA backed by the given buffer
+     *
+     * @throws IOException
+     *         if the buffer does not contain a (supported) binary SPA
+     */
+    public static <I> MappedSPA<I> load(ByteBuffer data, Function<String, ? extends I> symbolDecoder)
+            throws IOException {
+
+        // use an independent view, so that we are not affected by the position or byte order of the given buffer
+        final ByteBuffer buffer = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary SPA");
+        }
+
+        final int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+
+        final int numInternals = buffer.getInt(8);
+        final int numCalls = buffer.getInt(12);
+        final int initialProcedureId = buffer.getInt(16);
+        final int numInputs = numInternals + numCalls;
+
+        if (numInternals < 0 || numCalls < 0 || numInputs < 0 || initialProcedureId < NO_PROCEDURE ||
+            initialProcedureId >= numCalls) {
+            throw new IOException("Corrupt header");
+        }
+
+        final List<I> symbols = new ArrayList<>(numInputs + 1);
+        long position = HEADER_SIZE;
+
+        for (int i = 0; i <= numInputs; i++) {
+            checkBounds(buffer, position, 4);
+            final int length = buffer.getInt((int) position);
+            checkBounds(buffer, position + 4, length);
+
+            final byte[] bytes = new byte[length];
+            final ByteBuffer view = buffer.duplicate();
+            view.position((int) position + 4);
+            view.get(bytes);
+
+            symbols.add(symbolDecoder.apply(new String(bytes, StandardCharsets.UTF_8)));
+            position += 4 + length;
+        }
+
+        final Alphabet<I> internals = new SimpleAlphabet<>(symbols.subList(0, numInternals));
+        final Alphabet<I> calls = new SimpleAlphabet<>(symbols.subList(numInternals, numInputs));
+        final SPAAlphabet<I> alphabet = new DefaultSPAAlphabet<>(internals, calls, symbols.get(numInputs));
+
+        final int tableOffset = (int) align(position);
+        checkBounds(buffer, tableOffset, (long) TABLE_ENTRY_SIZE * numCalls);
+
+        final int[] numStates = new int[numCalls];
+        final int[] initialStates = new int[numCalls];
+        final int[] offsets = new int[numCalls];
+
+        for (int p = 0; p < numCalls; p++) {
+            final int entry = tableOffset + p * TABLE_ENTRY_SIZE;
+
+            numStates[p] = buffer.getInt(entry);
+            initialStates[p] = buffer.getInt(entry + 4);
+            offsets[p] = buffer.getInt(entry + 8);
+
+            if (numStates[p] == NO_PROCEDURE) {
+                if (initialStates[p] != AbstractCompactSPA.UNDEFINED) {
+                    throw new IOException("Corrupt procedure table");
+                }
+            } else {
+                final long size = numStates[p];
+                if (size < 0 || initialStates[p] < AbstractCompactSPA.UNDEFINED || initialStates[p] >= size) {
+                    throw new IOException("Corrupt procedure table");
+                }
+                checkBounds(buffer, offsets[p], size * numInputs * 4 + size);
+                checkTransitions(buffer, offsets[p], numStates[p], numInputs);
+            }
+        }
+
+        final I initialProcedure = initialProcedureId == NO_PROCEDURE ? null : calls.getSymbol(initialProcedureId);
+
+        return new MappedSPA<>(alphabet, initialProcedure, buffer, numStates, initialStates, offsets);
+    }
+
+    /**
+     * Checks that all transitions of the procedure at the given offset are either undefined or point to one of its
+     * states. Requires the transition table to be within the bounds of the buffer.
+     */
+    private static void checkTransitions(ByteBuffer buffer, int offset, int size, int numInputs) throws IOException {
+        final long end = offset + (long) size * numInputs * 4;
+
+        for (long i = offset; i < end; i += 4) {
+            final int succ = buffer.getInt((int) i);
+            if (succ < AbstractCompactSPA.UNDEFINED || succ >= size) {
+                throw new IOException("Corrupt transition table");
+            }
+        }
+    }
+
+    private static long align(long position) {
+        return (position + 3) & ~3L;
+    }
+
+    private static void pad(DataOutputStream out, long position) throws IOException {
+        for (long i = position; i < align(position); i++) {
+            out.writeByte(0);
+        }
+    }
+
+    private static void checkBounds(ByteBuffer buffer, long offset, long length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+            throw new IOException("Unexpected end of data");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import net.automatalib.automata.concepts.StateIDs;
+import net.automatalib.automata.fsa.DFA;
+
+/**
+ * A compiled, heap-based {@link AbstractCompactSPA}. Each procedure is stored as a flat transition array over the
+ * procedural alphabet (internal symbols followed by call symbols).
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class CompactSPA<I> extends AbstractCompactSPA<I> {
+
+    private final int numProceduralInputs;
+    private final int[] initialStates;
+    private final int[][] transitions;
+    private final boolean[][] acceptance;
+
+    public CompactSPA(SPA<?, I> spa) {
+        super(spa.getInputAlphabet(), spa.getInitialProcedure());
+
+        final SPAAlphabet<I> alphabet = spa.getInputAlphabet();
+        final Map<I, DFA<?, I>> sourceProcedures = spa.getProcedures();
+        final int numCalls = alphabet.getNumCalls();
+
+        this.numProceduralInputs = getNumProceduralInputs();
+        this.initialStates = new int[numCalls];
+        this.transitions = new int[numCalls][];
+        this.acceptance = new boolean[numCalls][];
+
+        Arrays.fill(this.initialStates, UNDEFINED);
+
+        for (int i = 0; i < numCalls; i++) {
+            final DFA<?, I> dfa = sourceProcedures.get(alphabet.getCallSymbol(i));
+            if (dfa != null) {
+                compileProcedure(i, dfa, sourceProcedures);
+            }
+        }
+    }
+
+    /**
+     * Returns the given SPA if it already is an {@link AbstractCompactSPA}, or compiles it into a {@link CompactSPA}
+     * otherwise.
+     *
+     * @param spa
+     *         the SPA
+     * @param <I>
+     *         input symbol type
+     *
+     * @return the compiled SPA
+     */
+    @SuppressWarnings("unchecked")
+    public static <I> AbstractCompactSPA<I> of(SPA<?, I> spa) {
+        return spa instanceof AbstractCompactSPA ? (AbstractCompactSPA<I>) spa : new CompactSPA<>(spa);
+    }
+
+    private <S> void compileProcedure(int procedureId, DFA<S, I> dfa, Map<I, DFA<?, I>> sourceProcedures) {
+        final int numInternals = getNumInternals();
+        final int size = dfa.size();
+        final StateIDs<S> stateIDs = dfa.stateIDs();
+        final int[] trans = new int[size * numProceduralInputs];
+        final boolean[] acc = new boolean[size];
+
+        Arrays.fill(trans, UNDEFINED);
+
+        for (final S s : dfa.getStates()) {
+            final int id = stateIDs.getStateId(s);
+            final int offset = id * numProceduralInputs;
+
+            acc[id] = dfa.isAccepting(s);
+
+            for (int i = 0; i < numProceduralInputs; i++) {
+                final I sym = getProceduralSymbol(i);
+
+                // only query calls to existing procedures, as sub-models may not know the other call symbols
+                if (i >= numInternals && !sourceProcedures.containsKey(sym)) {
+                    continue;
+                }
+
+                final S succ = dfa.getSuccessor(s, sym);
+                if (succ != null) {
+                    trans[offset + i] = stateIDs.getStateId(succ);
+                }
+            }
+        }
+
+        final S initialState = dfa.getInitialState();
+
+        this.initialStates[procedureId] = initialState == null ? UNDEFINED : stateIDs.getStateId(initialState);
+        this.transitions[procedureId] = trans;
+        this.acceptance[procedureId] = acc;
+    }
+
+    private I getProceduralSymbol(int code) {
+        final SPAAlphabet<I> alphabet = getInputAlphabet();
+        final int numInternals = alphabet.getNumInternals();
+        return code < numInternals ? alphabet.getInternalSymbol(code) : alphabet.getCallSymbol(code - numInternals);
+    }
+
+    @Override
+    public boolean hasProcedure(int procedure) {
+        return this.transitions[procedure] != null;
+    }
+
+    @Override
+    public int getNumStates(int procedure) {
+        final boolean[] acc = this.acceptance[procedure];
+        return acc == null ? 0 : acc.length;
+    }
+
+    @Override
+    public int getIntInitialState(int procedure) {
+        return this.initialStates[procedure];
+    }
+
+    @Override
+    public int getIntSuccessor(int procedure, int state, int code) {
+        return this.transitions[procedure][state * numProceduralInputs + code];
+    }
+
+    @Override
+    public boolean isIntAccepting(int procedure, int state) {
+        return this.acceptance[procedure][state];
+    }
+}
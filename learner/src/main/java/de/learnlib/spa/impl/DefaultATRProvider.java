@@ -21,6 +21,7 @@ import java.util.Set;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import de.learnlib.api.AccessSequenceTransformer;
+import de.learnlib.spa.InvocationTree;
 import de.learnlib.spa.TransformationUtil;
 import de.learnlib.spa.api.ATRProvider;
 import de.learnlib.spa.api.SPAAlphabet;
@@ -32,6 +33,7 @@ public class DefaultATRProvider<I> implements ATRProvider<I> {
     private final Map<I, Word<I>> accessSequences;
     private final Map<I, Word<I>> returnSequences;
     private final Map<I, Word<I>> terminatingSequences;
+    private final Map<I, Word<I>> embeddedTerminatingSequences;
 
     private final SPAAlphabet<I> alphabet;
     private final TransformationUtil<I> transformationUtil;
@@ -42,6 +44,7 @@ public class DefaultATRProvider<I> implements ATRProvider<I> {
         this.accessSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
         this.returnSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
         this.terminatingSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
+        this.embeddedTerminatingSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
 
         this.transformationUtil = new TransformationUtil<>(alphabet);
     }
@@ -56,6 +59,11 @@ public class DefaultATRProvider<I> implements ATRProvider<I> {
         return this.terminatingSequences.get(procedure);
     }
 
+    @Override
+    public Word<I> getEmbeddedTerminatingSequence(I procedure, TransformationUtil<I> transformationUtil) {
+        return this.embeddedTerminatingSequences.get(procedure);
+    }
+
     @Override
     public Word<I> getReturnSequence(I procedure) {
         return this.returnSequences.get(procedure);
@@ -63,6 +71,12 @@ public class DefaultATRProvider<I> implements ATRProvider<I> {
 
     @Override
     public Set<I> scanPositiveCounterexample(Word<I> input) {
+        return scanPositiveCounterexample(new InvocationTree<>(this.alphabet, input));
+    }
+
+    @Override
+    public Set<I> scanPositiveCounterexample(InvocationTree<I> tree) {
+        final Word<I> input = tree.getWord();
         final Set<I> result = Sets.newHashSetWithExpectedSize(alphabet.getNumCalls() - accessSequences.size());
 
         for (int i = 0; i < input.size(); i++) {
@@ -70,10 +84,13 @@ public class DefaultATRProvider<I> implements ATRProvider<I> {
 
             if (this.alphabet.isCallSymbol(sym) && !this.accessSequences.containsKey(sym)) {
 
-                final int returnIdx = transformationUtil.findReturnIndex(input, i + 1);
+                final int returnIdx = tree.getMatchingIndex(i);
 
                 this.accessSequences.put(sym, input.prefix(i));
-                this.terminatingSequences.put(sym, input.subWord(i + 1, returnIdx));
+                final Word<I> terminatingSequence = input.subWord(i + 1, returnIdx);
+
+                this.terminatingSequences.put(sym, terminatingSequence);
+                this.embeddedTerminatingSequences.put(sym, transformationUtil.embed(sym, terminatingSequence));
                 this.returnSequences.put(sym, input.subWord(returnIdx + 1));
 
                 result.add(sym);
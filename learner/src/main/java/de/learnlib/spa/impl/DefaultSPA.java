@@ -24,13 +24,16 @@ import de.learnlib.spa.api.SPA;
 import de.learnlib.spa.api.SPAAlphabet;
 import de.learnlib.spa.view.ReachabilityView;
 import net.automatalib.automata.fsa.DFA;
-import net.automatalib.commons.util.collections.IterableUtil;
 import net.automatalib.graphs.Graph;
 import net.automatalib.ts.simple.SimpleDTS;
 import net.automatalib.words.Word;
 
 /**
  * A stack-based implementation for the (instrumented) semantics of a System of Procedural Automata.
+ * <p>
+ * Membership queries ({@link #accepts(Iterable)}, {@link #computeSuffixOutput(Iterable, Iterable)}) are answered by a
+ * simulation that stops as soon as the sink has been reached. For a simulation that additionally rejects words as soon
+ * as their configuration can no longer be completed to an accepted word, see {@link PruningSPA}.
  *
  * @param <S>
  *         hypotheses state type
@@ -94,7 +97,7 @@ public class DefaultSPA<S, I> implements SPA<State<I, S>, I>, SimpleDTS<State<I,
                 return sink;
             }
 
-            return new State<>(identifier, next, state.getStack());
+            return new State<>(identifier, next, state.getPersistentStack());
         } else if (alphabet.isCallSymbol(input)) {
 
             final DFA<S, I> effectiveModel = this.procedures.get(input);
@@ -105,7 +108,7 @@ public class DefaultSPA<S, I> implements SPA<State<I, S>, I>, SimpleDTS<State<I,
 
             final S next = effectiveModel.getInitialState();
 
-            return new State<>(input, next, state.getStack(), state);
+            return new State<>(input, next, state.getPersistentStack(), state);
         } else if (alphabet.isReturnSymbol(input)) {
 
             if (state == init) {
@@ -120,7 +123,7 @@ public class DefaultSPA<S, I> implements SPA<State<I, S>, I>, SimpleDTS<State<I,
                 return sink;
             }
 
-            final State<I, S> previousState = state.getStack().peek();
+            final State<I, S> previousState = state.getPersistentStack().peek();
 
             if (previousState == init) {
                 if (this.initialCall.equals(identifier)) {
@@ -140,7 +143,7 @@ public class DefaultSPA<S, I> implements SPA<State<I, S>, I>, SimpleDTS<State<I,
                 return sink;
             }
 
-            return new State<>(previousIdentifier, next, previousState.getStack());
+            return new State<>(previousIdentifier, next, previousState.getPersistentStack());
         } else {
             return this.sink;
         }
@@ -183,8 +186,28 @@ public class DefaultSPA<S, I> implements SPA<State<I, S>, I>, SimpleDTS<State<I,
         return this.computeSuffixOutput(prefix, suffix);
     }
 
+    @Override
+    public boolean accepts(Iterable<? extends I> input) {
+        return isAccepting(simulate(this.init, input));
+    }
+
     @Override
     public Boolean computeSuffixOutput(Iterable<? extends I> iterable, Iterable<? extends I> iterable1) {
-        return this.accepts(IterableUtil.concat(iterable, iterable1));
+        return isAccepting(simulate(simulate(this.init, iterable), iterable1));
+    }
+
+    private State<I, S> simulate(State<I, S> state, Iterable<? extends I> input) {
+        State<I, S> current = state;
+
+        for (final I sym : input) {
+            current = getTransition(current, sym);
+
+            // early exit, the sink is absorbing
+            if (current == sink) {
+                break;
+            }
+        }
+
+        return current;
     }
 }
\ No newline at end of file
@@ -15,21 +15,54 @@
 package de.learnlib.spa.impl;
 
 import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Maps;
 import de.learnlib.spa.api.SPAAlphabet;
 import net.automatalib.words.Alphabet;
 import net.automatalib.words.VPDAlphabet;
 import net.automatalib.words.impl.Alphabets;
-
+import net.automatalib.words.impl.SimpleAlphabet;
+
+/**
+ * The default {@link SPAAlphabet} implementation. Symbols are indexed globally in the order internal symbols, call
+ * symbols, return symbol.
+ * <p>
+ * Since symbols are classified (and indexed) for every simulated input symbol, the global index of each symbol is
+ * precomputed upon construction, so that classification is a single lookup, independent of the lookup performance of
+ * the given (sub-)alphabets. The lookup uses an array for (densely distributed) {@link Integer} symbols and symbols of
+ * a single {@link Enum} type and a hash map otherwise. The given alphabets must not be modified afterwards.
+ * <p>
+ * The alphabet may be extended by new internal and call symbols (see {@link #addInternalSymbol(Object)} and {@link
+ * #addCallSymbol(Object)}), e.g. for learning with a growing alphabet. Extending the alphabet recomputes the lookup and
+ * must not happen concurrently to other accesses of the alphabet.
+ *
+ * @param <I>
+ *         input symbol type
+ */
 public class DefaultSPAAlphabet<I> extends AbstractList<I> implements SPAAlphabet<I>, VPDAlphabet<I> {
 
-    private final Alphabet<I> internalAlphabet;
-    private final Alphabet<I> callAlphabet;
+    private static final int NOT_CONTAINED = -1;
+
+    private Alphabet<I> internalAlphabet;
+    private Alphabet<I> callAlphabet;
     private final Alphabet<I> returnAlphabet;
 
+    private int numInternals;
+    private int numCalls;
+
+    // exactly one of the following lookups is used
+    private Map<I, Integer> indexMap;
+    private int[] indexTable;
+    private int indexTableOffset;
+    private Class<?> enumClass;
+
     public DefaultSPAAlphabet(Alphabet<I> internalAlphabet, Alphabet<I> callAlphabet, I returnSymbol) {
         this.internalAlphabet = internalAlphabet;
         this.callAlphabet = callAlphabet;
@@ -37,6 +70,175 @@ public class DefaultSPAAlphabet<I> extends AbstractList<I> implements SPAAlphabe
 
         validateDisjointness(internalAlphabet, SymbolType.INTERNAL, callAlphabet, returnAlphabet);
         validateDisjointness(callAlphabet, SymbolType.CALL, returnAlphabet);
+
+        initializeLookup();
+    }
+
+    /**
+     * Adds a new internal symbol to this alphabet. Note that this shifts the global indices of all call symbols and the
+     * return symbol.
+     *
+     * @param symbol
+     *         the symbol to add
+     *
+     * @return {@code true} if the symbol has been added, {@code false} if it already was an internal symbol of this
+     * alphabet
+     *
+     * @throws IllegalArgumentException
+     *         if the symbol already is a call symbol or the return symbol of this alphabet
+     */
+    public boolean addInternalSymbol(I symbol) {
+        if (isInternalSymbol(symbol)) {
+            return false;
+        } else if (containsSymbol(symbol)) {
+            throw new IllegalArgumentException("Symbol is already a non-internal symbol of this alphabet");
+        }
+
+        this.internalAlphabet = withNewSymbol(this.internalAlphabet, symbol);
+        initializeLookup();
+        return true;
+    }
+
+    /**
+     * Adds a new call symbol to this alphabet. Note that this shifts the global index of the return symbol.
+     *
+     * @param symbol
+     *         the symbol to add
+     *
+     * @return {@code true} if the symbol has been added, {@code false} if it already was a call symbol of this
+     * alphabet
+     *
+     * @throws IllegalArgumentException
+     *         if the symbol already is an internal symbol or the return symbol of this alphabet
+     */
+    public boolean addCallSymbol(I symbol) {
+        if (isCallSymbol(symbol)) {
+            return false;
+        } else if (containsSymbol(symbol)) {
+            throw new IllegalArgumentException("Symbol is already a non-call symbol of this alphabet");
+        }
+
+        this.callAlphabet = withNewSymbol(this.callAlphabet, symbol);
+        initializeLookup();
+        return true;
+    }
+
+    /**
+     * Copies instead of modifying the given alphabet, so that neither the alphabets passed to the constructor nor the
+     * sub-alphabets previously returned by this alphabet change.
+     */
+    private static <I> Alphabet<I> withNewSymbol(Alphabet<I> alphabet, I symbol) {
+        final SimpleAlphabet<I> result = new SimpleAlphabet<>(alphabet);
+        result.addSymbol(symbol);
+        return result;
+    }
+
+    private void initializeLookup() {
+        this.numInternals = internalAlphabet.size();
+        this.numCalls = callAlphabet.size();
+
+        final int size = size();
+        final Class<?> commonEnum = getCommonEnumClass(this);
+
+        if (commonEnum != null) {
+            this.indexMap = null;
+            this.indexTable = newIndexTable(commonEnum.getEnumConstants().length);
+            this.indexTableOffset = 0;
+            this.enumClass = commonEnum;
+
+            for (int i = 0; i < size; i++) {
+                this.indexTable[((Enum<?>) getSymbol(i)).ordinal()] = i;
+            }
+        } else if (isDenseIntegerRange(this)) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (final I i : this) {
+                min = Math.min(min, (Integer) i);
+                max = Math.max(max, (Integer) i);
+            }
+
+            this.indexMap = null;
+            this.indexTable = newIndexTable(max - min + 1);
+            this.indexTableOffset = min;
+            this.enumClass = null;
+
+            for (int i = 0; i < size; i++) {
+                this.indexTable[(Integer) getSymbol(i) - min] = i;
+            }
+        } else {
+            this.indexMap = Maps.newHashMapWithExpectedSize(size);
+            this.indexTable = null;
+            this.indexTableOffset = 0;
+            this.enumClass = null;
+
+            for (int i = 0; i < size; i++) {
+                this.indexMap.put(getSymbol(i), i);
+            }
+        }
+    }
+
+    @Nullable
+    private static Class<?> getCommonEnumClass(Collection<?> symbols) {
+        Class<?> result = null;
+
+        for (final Object o : symbols) {
+            if (!(o instanceof Enum)) {
+                return null;
+            }
+
+            final Class<?> clazz = ((Enum<?>) o).getDeclaringClass();
+            if (result == null) {
+                result = clazz;
+            } else if (result != clazz) {
+                return null;
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isDenseIntegerRange(Collection<?> symbols) {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+
+        for (final Object o : symbols) {
+            if (!(o instanceof Integer)) {
+                return false;
+            }
+            min = Math.min(min, (Integer) o);
+            max = Math.max(max, (Integer) o);
+        }
+
+        // allow some gaps, but do not waste (much) more memory than a hash map would
+        return max - min < 4L * symbols.size() + 64;
+    }
+
+    private static int[] newIndexTable(int size) {
+        final int[] result = new int[size];
+        Arrays.fill(result, NOT_CONTAINED);
+        return result;
+    }
+
+    /**
+     * Returns the global index of the given symbol, or {@link #NOT_CONTAINED} if the symbol is not contained in this
+     * alphabet.
+     */
+    private int lookup(@Nullable Object symbol) {
+        if (indexMap != null) {
+            final Integer result = indexMap.get(symbol);
+            return result == null ? NOT_CONTAINED : result;
+        } else if (enumClass != null) {
+            if (!(symbol instanceof Enum) || ((Enum<?>) symbol).getDeclaringClass() != enumClass) {
+                return NOT_CONTAINED;
+            }
+            return indexTable[((Enum<?>) symbol).ordinal()];
+        } else {
+            if (!(symbol instanceof Integer)) {
+                return NOT_CONTAINED;
+            }
+            final int key = (Integer) symbol - indexTableOffset;
+            return key >= 0 && key < indexTable.length ? indexTable[key] : NOT_CONTAINED;
+        }
     }
 
     @SafeVarargs
@@ -78,7 +280,12 @@ public class DefaultSPAAlphabet<I> extends AbstractList<I> implements SPAAlphabe
 
     @Override
     public int getCallSymbolIndex(I symbol) {
-        return callAlphabet.getSymbolIndex(symbol);
+        final int index = lookup(symbol);
+        if (index < numInternals || index >= numInternals + numCalls) {
+            // other symbols are handled by the call alphabet, so that they behave as before
+            return callAlphabet.getSymbolIndex(symbol);
+        }
+        return index - numInternals;
     }
 
     @Override
@@ -106,30 +313,16 @@ public class DefaultSPAAlphabet<I> extends AbstractList<I> implements SPAAlphabe
 
     @Override
     public int getNumCalls() {
-        return callAlphabet.size();
+        return numCalls;
     }
 
     @Override
     public int getSymbolIndex(I symbol) {
-        int offset = 0;
-
-        if (internalAlphabet.containsSymbol(symbol)) {
-            return internalAlphabet.getSymbolIndex(symbol);
-        } else {
-            offset += internalAlphabet.size();
-        }
-
-        if (callAlphabet.containsSymbol(symbol)) {
-            return offset + callAlphabet.getSymbolIndex(symbol);
-        } else {
-            offset += callAlphabet.size();
-        }
-
-        if (returnAlphabet.containsSymbol(symbol)) {
-            return offset + returnAlphabet.getSymbolIndex(symbol);
-        } else {
+        final int index = lookup(symbol);
+        if (index == NOT_CONTAINED) {
             throw new IllegalArgumentException("Alphabet does not contain the queried symbol");
         }
+        return index;
     }
 
     @Override
@@ -139,8 +332,7 @@ public class DefaultSPAAlphabet<I> extends AbstractList<I> implements SPAAlphabe
 
     @Override
     public boolean containsSymbol(I symbol) {
-        return internalAlphabet.containsSymbol(symbol) || callAlphabet.containsSymbol(symbol) ||
-               returnAlphabet.containsSymbol(symbol);
+        return lookup(symbol) != NOT_CONTAINED;
     }
 
     @Override
@@ -150,12 +342,17 @@ public class DefaultSPAAlphabet<I> extends AbstractList<I> implements SPAAlphabe
 
     @Override
     public int getInternalSymbolIndex(I symbol) {
-        return internalAlphabet.getSymbolIndex(symbol);
+        final int index = lookup(symbol);
+        if (index == NOT_CONTAINED || index >= numInternals) {
+            // other symbols are handled by the internal alphabet, so that they behave as before
+            return internalAlphabet.getSymbolIndex(symbol);
+        }
+        return index;
     }
 
     @Override
     public int getNumInternals() {
-        return internalAlphabet.size();
+        return numInternals;
     }
 
     @Override
@@ -180,14 +377,16 @@ public class DefaultSPAAlphabet<I> extends AbstractList<I> implements SPAAlphabe
 
     @Override
     public SymbolType getSymbolType(I symbol) {
-        if (internalAlphabet.containsSymbol(symbol)) {
+        final int index = lookup(symbol);
+
+        if (index == NOT_CONTAINED) {
+            throw new IllegalArgumentException("Symbol is not contained in this alphabet");
+        } else if (index < numInternals) {
             return SymbolType.INTERNAL;
-        } else if (callAlphabet.containsSymbol(symbol)) {
+        } else if (index < numInternals + numCalls) {
             return SymbolType.CALL;
-        } else if (returnAlphabet.containsSymbol(symbol)) {
-            return SymbolType.RETURN;
         } else {
-            throw new IllegalArgumentException("Symbol is not contained in this alphabet");
+            return SymbolType.RETURN;
         }
     }
 
@@ -208,16 +407,18 @@ public class DefaultSPAAlphabet<I> extends AbstractList<I> implements SPAAlphabe
 
     @Override
     public boolean isCallSymbol(I symbol) {
-        return this.callAlphabet.containsSymbol(symbol);
+        final int index = lookup(symbol);
+        return index >= numInternals && index < numInternals + numCalls;
     }
 
     @Override
     public boolean isInternalSymbol(I symbol) {
-        return this.internalAlphabet.containsSymbol(symbol);
+        final int index = lookup(symbol);
+        return index != NOT_CONTAINED && index < numInternals;
     }
 
     @Override
     public boolean isReturnSymbol(I symbol) {
-        return this.returnAlphabet.containsSymbol(symbol);
+        return lookup(symbol) >= numInternals + numCalls;
     }
 }
@@ -0,0 +1,206 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.words.Word;
+
+/**
+ * A membership checker for (very long) words that exploits the compositional semantics of SPAs: A word is accepted iff
+ * it is a well-matched invocation of the initial procedure and each (nested) invocation's normalized local word is
+ * accepted by its procedure.
+ * <p>
+ * The input word is first indexed in a single sequential pass, which validates its call structure and stores the
+ * matching return position of each call. Afterwards, the invocations are checked independently of each other by
+ * {@link RecursiveTask}s that split the word into ranges of call positions. Each task scans the local words of the
+ * invocations starting in its range, skipping nested invocations in constant time. As soon as a single invocation is
+ * rejected, the remaining tasks stop early.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class ForkJoinSPAAcceptor<I> {
+
+    private static final int NO_CALL = -1;
+    private static final int DEFAULT_THRESHOLD = 1 << 13;
+
+    private final SPAAlphabet<I> alphabet;
+    private final I initialProcedure;
+    private final Map<I, DFA<?, I>> procedures;
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    public ForkJoinSPAAcceptor(SPA<?, I> spa) {
+        this(spa, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param spa
+     *         the SPA whose procedures should be used for checking the invocations
+     * @param pool
+     *         the pool for executing the tasks
+     * @param threshold
+     *         the size of a (call position) range below which a task no longer forks sub-tasks
+     */
+    public ForkJoinSPAAcceptor(SPA<?, I> spa, ForkJoinPool pool, int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+
+        this.alphabet = spa.getInputAlphabet();
+        this.initialProcedure = spa.getInitialProcedure();
+        this.procedures = new HashMap<>(spa.getProcedures());
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    public boolean accepts(Word<I> input) {
+        final int[] matchingReturns = computeMatchingReturns(input);
+
+        if (matchingReturns == null) {
+            return false;
+        }
+
+        return pool.invoke(new InvocationTask(input, matchingReturns, new AtomicBoolean(), 0, input.size()));
+    }
+
+    /**
+     * Computes for each call position the index of the matching return symbol ({@link #NO_CALL} for non-call
+     * positions). Returns {@code null}, if the word does not describe a single, terminated invocation of the initial
+     * procedure.
+     */
+    private int[] computeMatchingReturns(Word<I> input) {
+        if (initialProcedure == null || input.isEmpty() || !initialProcedure.equals(input.firstSymbol())) {
+            return null;
+        }
+
+        final int[] result = new int[input.size()];
+        int[] stack = new int[16];
+        int depth = 0;
+
+        Arrays.fill(result, NO_CALL);
+
+        for (int i = 0; i < input.size(); i++) {
+            final I sym = input.getSymbol(i);
+
+            // no symbols before the initial call or after the final return
+            if (depth == 0 && i > 0) {
+                return null;
+            }
+
+            if (alphabet.isCallSymbol(sym)) {
+                if (!procedures.containsKey(sym)) {
+                    return null;
+                }
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[depth++] = i;
+            } else if (alphabet.isReturnSymbol(sym)) {
+                if (depth == 0) {
+                    return null;
+                }
+                result[stack[--depth]] = i;
+            } else if (!alphabet.isInternalSymbol(sym) || depth == 0) {
+                return null;
+            }
+        }
+
+        return depth == 0 ? result : null;
+    }
+
+    private <S> boolean checkInvocation(Word<I> input, int[] matchingReturns, int callIdx, DFA<S, I> procedure) {
+        final int returnIdx = matchingReturns[callIdx];
+        S state = procedure.getInitialState();
+        int idx = callIdx + 1;
+
+        while (idx < returnIdx && state != null) {
+            state = procedure.getSuccessor(state, input.getSymbol(idx));
+
+            final int nestedReturnIdx = matchingReturns[idx];
+            idx = nestedReturnIdx == NO_CALL ? idx + 1 : nestedReturnIdx + 1;
+        }
+
+        return state != null && procedure.isAccepting(state);
+    }
+
+    /**
+     * Checks all invocations whose call symbol is located in the range [{@code from}, {@code to}).
+     */
+    private final class InvocationTask extends RecursiveTask<Boolean> {
+
+        private final Word<I> input;
+        private final int[] matchingReturns;
+        private final AtomicBoolean rejected;
+        private final int from;
+        private final int to;
+
+        InvocationTask(Word<I> input, int[] matchingReturns, AtomicBoolean rejected, int from, int to) {
+            this.input = input;
+            this.matchingReturns = matchingReturns;
+            this.rejected = rejected;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (to - from <= threshold) {
+                return computeDirectly();
+            }
+
+            final int mid = from + (to - from) / 2;
+            final InvocationTask left = new InvocationTask(input, matchingReturns, rejected, from, mid);
+            final InvocationTask right = new InvocationTask(input, matchingReturns, rejected, mid, to);
+
+            left.fork();
+            final boolean rightResult = right.compute();
+            final boolean leftResult = left.join();
+
+            return leftResult && rightResult;
+        }
+
+        private boolean computeDirectly() {
+            for (int i = from; i < to; i++) {
+                if (matchingReturns[i] != NO_CALL) {
+                    // some other task already found a rejected invocation
+                    if (rejected.get()) {
+                        return false;
+                    }
+
+                    if (!checkInvocation(input, matchingReturns, i, procedures.get(input.getSymbol(i)))) {
+                        rejected.set(true);
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+    }
+}
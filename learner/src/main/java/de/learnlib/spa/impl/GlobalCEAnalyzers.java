@@ -0,0 +1,329 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import de.learnlib.spa.api.GlobalCEAnalyzer;
+import de.learnlib.spa.api.GlobalCEAnalyzer.Analysis;
+
+/**
+ * Default implementations of {@link GlobalCEAnalyzer}s, analogous to the {@link
+ * de.learnlib.acex.analyzers.AcexAnalyzers} used by the local learners.
+ *
+ * @author frohme
+ */
+public final class GlobalCEAnalyzers {
+
+    /**
+     * Tests the positions from front to back and returns the first accepted one.
+     */
+    public static final GlobalCEAnalyzer LINEAR_FWD = (low, high) -> new LinearAnalysis(low, high, true);
+
+    /**
+     * Tests the positions from back to front and returns the successor of the first rejected one.
+     */
+    public static final GlobalCEAnalyzer LINEAR_BWD = (low, high) -> new LinearAnalysis(low, high, false);
+
+    /**
+     * A binary search for the lowest accepted position (assuming monotonicity), see {@link #speculative(int)}.
+     */
+    public static final GlobalCEAnalyzer BINARY_SEARCH = speculative(1);
+
+    /**
+     * Doubles the step width from the front until an accepted position is found and then bisects the last step.
+     */
+    public static final GlobalCEAnalyzer EXPONENTIAL_FWD = (low, high) -> new ExponentialAnalysis(low, high, true);
+
+    /**
+     * Doubles the step width from the back until a rejected position is found and then bisects the last step. This
+     * is favorable if the breakpoint is usually located near the end of the counterexample.
+     */
+    public static final GlobalCEAnalyzer EXPONENTIAL_BWD = (low, high) -> new ExponentialAnalysis(low, high, false);
+
+    /**
+     * The bisection of Rivest and Schapire, which maintains a rejected lower and an accepted upper position and
+     * returns any breakpoint between them.
+     */
+    public static final GlobalCEAnalyzer RIVEST_SCHAPIRE = RivestSchapireAnalysis::new;
+
+    private GlobalCEAnalyzers() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns a k-ary search for the lowest accepted position (assuming monotonicity). In each round, the remaining
+     * range is split by {@code probesPerRound} probes, which are tested as a single batch. With a batching or parallel
+     * oracle, the analysis takes log<sub>k+1</sub>(n) instead of log<sub>2</sub>(n) round-trips, at the cost of more
+     * (speculative) queries.
+     *
+     * @param probesPerRound
+     *         the number of positions tested in each round
+     *
+     * @return the analyzer
+     */
+    public static GlobalCEAnalyzer speculative(int probesPerRound) {
+        if (probesPerRound < 1) {
+            throw new IllegalArgumentException("Number of probes per round must be positive");
+        }
+
+        return (low, high) -> new SpeculativeAnalysis(low, high, probesPerRound);
+    }
+
+    /**
+     * Common state handling of the analyses. Sub-classes request the positions of their next step via {@link
+     * #request(int...)} or report their result via {@link #finish(int)}, both upon construction and after each
+     * processed step.
+     */
+    private abstract static class AbstractAnalysis implements Analysis {
+
+        private int[] positions;
+        private int result;
+
+        @Override
+        public boolean isFinished() {
+            return this.positions == null;
+        }
+
+        @Override
+        public int[] getPositions() {
+            checkUnfinished();
+            return this.positions.clone();
+        }
+
+        @Override
+        public void processAnswers(boolean... answers) {
+            checkUnfinished();
+
+            if (answers.length != this.positions.length) {
+                throw new IllegalArgumentException("Expected " + this.positions.length + " answers");
+            }
+
+            process(this.positions, answers);
+        }
+
+        @Override
+        public int getResult() {
+            if (!isFinished()) {
+                throw new IllegalStateException("Analysis is not finished");
+            }
+            return this.result;
+        }
+
+        protected void request(int... positions) {
+            this.positions = positions;
+        }
+
+        protected void finish(int result) {
+            this.positions = null;
+            this.result = result;
+        }
+
+        protected abstract void process(int[] positions, boolean[] answers);
+
+        private void checkUnfinished() {
+            if (isFinished()) {
+                throw new IllegalStateException("Analysis is already finished");
+            }
+        }
+    }
+
+    private static final class LinearAnalysis extends AbstractAnalysis {
+
+        private final int low;
+        private final int high;
+        private final boolean forward;
+        private int next;
+
+        LinearAnalysis(int low, int high, boolean forward) {
+            this.low = low;
+            this.high = high;
+            this.forward = forward;
+            this.next = forward ? low + 1 : high - 1;
+            advance();
+        }
+
+        @Override
+        protected void process(int[] positions, boolean[] answers) {
+            if (forward && answers[0]) {
+                finish(positions[0]);
+            } else if (!forward && !answers[0]) {
+                finish(positions[0] + 1);
+            } else {
+                next += forward ? 1 : -1;
+                advance();
+            }
+        }
+
+        private void advance() {
+            if (forward && next >= high) {
+                finish(high);
+            } else if (!forward && next <= low) {
+                finish(low + 1);
+            } else {
+                request(next);
+            }
+        }
+    }
+
+    private static final class RivestSchapireAnalysis extends AbstractAnalysis {
+
+        private int lower;
+        private int upper;
+
+        RivestSchapireAnalysis(int low, int high) {
+            this.lower = low;
+            this.upper = high;
+            advance();
+        }
+
+        @Override
+        protected void process(int[] positions, boolean[] answers) {
+            if (answers[0]) {
+                upper = positions[0];
+            } else {
+                lower = positions[0];
+            }
+
+            advance();
+        }
+
+        private void advance() {
+            if (upper - lower > 1) {
+                request(lower + ((upper - lower) / 2));
+            } else {
+                finish(upper);
+            }
+        }
+    }
+
+    private static final class ExponentialAnalysis extends AbstractAnalysis {
+
+        private final boolean forward;
+        private int lower;
+        private int upper;
+        private int step;
+        private boolean bisecting;
+
+        ExponentialAnalysis(int low, int high, boolean forward) {
+            this.forward = forward;
+            this.lower = low;
+            this.upper = high;
+            this.step = 1;
+            advance();
+        }
+
+        @Override
+        protected void process(int[] positions, boolean[] answers) {
+            final int probe = positions[0];
+
+            if (bisecting) {
+                if (answers[0]) {
+                    upper = probe;
+                } else {
+                    lower = probe;
+                }
+            } else if (forward) {
+                if (answers[0]) {
+                    upper = probe;
+                    bisecting = true;
+                } else {
+                    lower = probe;
+                    step *= 2;
+                }
+            } else {
+                if (answers[0]) {
+                    upper = probe;
+                    step *= 2;
+                } else {
+                    lower = probe;
+                    bisecting = true;
+                }
+            }
+
+            advance();
+        }
+
+        private void advance() {
+            if (!bisecting) {
+                // gallop until the step would leave the range, then bisect the remaining range
+                final int probe = forward ? lower + step : upper - step;
+
+                if (probe > lower && probe < upper) {
+                    request(probe);
+                    return;
+                }
+
+                bisecting = true;
+            }
+
+            if (upper - lower > 1) {
+                request(lower + ((upper - lower) / 2));
+            } else {
+                finish(upper);
+            }
+        }
+    }
+
+    private static final class SpeculativeAnalysis extends AbstractAnalysis {
+
+        private final int probesPerRound;
+        private int lower;
+        private int upper;
+        private int best;
+
+        SpeculativeAnalysis(int low, int high, int probesPerRound) {
+            this.probesPerRound = probesPerRound;
+            this.lower = low + 1;
+            this.upper = high - 1;
+            this.best = high;
+            advance();
+        }
+
+        @Override
+        protected void process(int[] positions, boolean[] answers) {
+            int firstAccepting = 0;
+            while (firstAccepting < positions.length && !answers[firstAccepting]) {
+                firstAccepting++;
+            }
+
+            if (firstAccepting < positions.length) {
+                best = positions[firstAccepting];
+                upper = positions[firstAccepting] - 1;
+            }
+            if (firstAccepting > 0) {
+                lower = positions[firstAccepting - 1] + 1;
+            }
+
+            advance();
+        }
+
+        private void advance() {
+            if (upper - lower < 0) {
+                finish(best);
+                return;
+            }
+
+            final int range = upper - lower + 1;
+            final int numProbes = Math.min(probesPerRound, range);
+            final int[] positions = new int[numProbes];
+
+            for (int j = 0; j < numProbes; j++) {
+                // evenly spaced and strictly increasing positions, i.e. the middle of the range for a single probe
+                positions[j] = lower + (int) (((long) (j + 1) * range - 1) / (numProbes + 1));
+            }
+
+            request(positions);
+        }
+    }
+}
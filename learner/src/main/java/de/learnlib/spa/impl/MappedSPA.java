@@ -0,0 +1,81 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nullable;
+
+import de.learnlib.spa.api.SPAAlphabet;
+
+/**
+ * An {@link AbstractCompactSPA} whose transition tables are read directly from a {@link ByteBuffer} (typically a
+ * memory-mapped file in the {@link BinarySPAFormat}). Apart from a constant number of values per procedure, no data is
+ * copied to the heap. See {@link BinarySPAFormat#load(java.nio.file.Path, java.util.function.Function)}.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class MappedSPA<I> extends AbstractCompactSPA<I> {
+
+    private final ByteBuffer buffer;
+    private final int numProceduralInputs;
+
+    private final int[] numStates;
+    private final int[] initialStates;
+    private final int[] offsets;
+
+    MappedSPA(SPAAlphabet<I> alphabet,
+              @Nullable I initialProcedure,
+              ByteBuffer buffer,
+              int[] numStates,
+              int[] initialStates,
+              int[] offsets) {
+        super(alphabet, initialProcedure);
+        this.buffer = buffer;
+        this.numProceduralInputs = getNumProceduralInputs();
+        this.numStates = numStates;
+        this.initialStates = initialStates;
+        this.offsets = offsets;
+    }
+
+    @Override
+    public boolean hasProcedure(int procedure) {
+        return this.numStates[procedure] != BinarySPAFormat.NO_PROCEDURE;
+    }
+
+    @Override
+    public int getNumStates(int procedure) {
+        return Math.max(this.numStates[procedure], 0);
+    }
+
+    @Override
+    public int getIntInitialState(int procedure) {
+        return this.initialStates[procedure];
+    }
+
+    @Override
+    public int getIntSuccessor(int procedure, int state, int code) {
+        return this.buffer.getInt(this.offsets[procedure] + ((state * numProceduralInputs + code) << 2));
+    }
+
+    @Override
+    public boolean isIntAccepting(int procedure, int state) {
+        final int acceptanceOffset = this.offsets[procedure] + ((this.numStates[procedure] * numProceduralInputs) << 2);
+        return this.buffer.get(acceptanceOffset + state) != 0;
+    }
+}
@@ -14,17 +14,19 @@
  */
 package de.learnlib.spa.impl;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.List;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiConsumer;
 
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.collect.Streams;
 import de.learnlib.api.AccessSequenceTransformer;
+import de.learnlib.spa.InvocationTree;
 import de.learnlib.spa.TransformationUtil;
 import de.learnlib.spa.api.ATRProvider;
 import de.learnlib.spa.api.SPAAlphabet;
@@ -38,6 +40,7 @@ public class OptimizingATRProvider<I> implements ATRProvider<I> {
     private final Map<I, Word<I>> accessSequences;
     private final Map<I, Word<I>> returnSequences;
     private final Map<I, Word<I>> terminatingSequences;
+    private final Map<I, Word<I>> embeddedTerminatingSequences;
 
     private final SPAAlphabet<I> alphabet;
     private final TransformationUtil<I> transformationUtil;
@@ -48,6 +51,7 @@ public class OptimizingATRProvider<I> implements ATRProvider<I> {
         this.accessSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
         this.returnSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
         this.terminatingSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
+        this.embeddedTerminatingSequences = Maps.newHashMapWithExpectedSize(alphabet.getNumCalls());
 
         this.transformationUtil = new TransformationUtil<>(alphabet);
     }
@@ -62,6 +66,11 @@ public class OptimizingATRProvider<I> implements ATRProvider<I> {
         return this.terminatingSequences.get(procedure);
     }
 
+    @Override
+    public Word<I> getEmbeddedTerminatingSequence(I procedure, TransformationUtil<I> transformationUtil) {
+        return this.embeddedTerminatingSequences.get(procedure);
+    }
+
     @Override
     public Word<I> getReturnSequence(I procedure) {
         return this.returnSequences.get(procedure);
@@ -69,11 +78,16 @@ public class OptimizingATRProvider<I> implements ATRProvider<I> {
 
     @Override
     public Set<I> scanPositiveCounterexample(Word<I> input) {
+        return scanPositiveCounterexample(new InvocationTree<>(this.alphabet, input));
+    }
+
+    @Override
+    public Set<I> scanPositiveCounterexample(InvocationTree<I> tree) {
         final Set<I> newProcedures =
                 Sets.newHashSetWithExpectedSize(this.alphabet.getNumCalls() - this.terminatingSequences.size());
 
-        this.extractPotentialTerminatingSequences(input, newProcedures);
-        this.extractPotentialAccessAndReturnSequences(input);
+        this.extractPotentialTerminatingSequences(tree, newProcedures);
+        this.extractPotentialAccessAndReturnSequences(tree);
 
         return newProcedures;
     }
@@ -96,7 +110,7 @@ public class OptimizingATRProvider<I> implements ATRProvider<I> {
                     final Word<I> hypTS = getShortestHypothesisTS(automaton, providers.get(i), inputs);
 
                     if (hypTS != null && hypTS.size() < currentTS.size()) {
-                        terminatingSequences.put(i, hypTS);
+                        setTerminatingSequence(i, hypTS);
                         stable = false;
                         foundImprovements = true;
                     }
@@ -104,9 +118,9 @@ public class OptimizingATRProvider<I> implements ATRProvider<I> {
             }
 
             if (foundImprovements) {
-                optimizeSequences(this.accessSequences);
-                optimizeSequences(this.terminatingSequences);
-                optimizeSequences(this.returnSequences);
+                optimizeSequences(this.accessSequences, this.accessSequences::put);
+                optimizeSequences(this.terminatingSequences, this::setTerminatingSequence);
+                optimizeSequences(this.returnSequences, this.returnSequences::put);
             }
         }
     }
@@ -117,87 +131,138 @@ public class OptimizingATRProvider<I> implements ATRProvider<I> {
         return Streams.stream(Covers.stateCoverIterator(hyp, inputs))
                       .filter(hyp::accepts)
                       .map(asTransformer::transformAccessSequence)
-                      .map(as -> transformationUtil.expand(as, terminatingSequences::get))
+                      .map(as -> transformationUtil.expandEmbedded(as, embeddedTerminatingSequences::get))
                       .min(Comparator.comparingInt(Word::size))
                       .orElse(null);
     }
 
-    private void optimizeSequences(final Map<I, Word<I>> sequences) {
+    private void optimizeSequences(final Map<I, Word<I>> sequences, final BiConsumer<I, Word<I>> setter) {
         for (final Map.Entry<I, Word<I>> entry : sequences.entrySet()) {
             final Word<I> currentSequence = entry.getValue();
             final Word<I> minimized = minifyWellMatched(currentSequence);
 
             if (minimized.size() < currentSequence.size()) {
-                sequences.put(entry.getKey(), minimized);
+                setter.accept(entry.getKey(), minimized);
             }
         }
     }
 
-    private void extractPotentialTerminatingSequences(final Word<I> input, final Set<I> newProcedures) {
+    /**
+     * Updates the terminating sequence of the given procedure and the cached embedding of it.
+     */
+    private void setTerminatingSequence(final I procedure, final Word<I> terminatingSequence) {
+        this.terminatingSequences.put(procedure, terminatingSequence);
+        this.embeddedTerminatingSequences.put(procedure, transformationUtil.embed(procedure, terminatingSequence));
+    }
+
+    private void extractPotentialTerminatingSequences(final InvocationTree<I> tree, final Set<I> newProcedures) {
+        final Word<I> input = tree.getWord();
+
         for (int i = 0; i < input.size(); i++) {
             final I sym = input.getSymbol(i);
 
             if (this.alphabet.isCallSymbol(sym)) {
 
-                final int returnIdx = transformationUtil.findReturnIndex(input, i + 1);
+                final int returnIdx = tree.getMatchingIndex(i);
                 final Word<I> potentialTermSeq = input.subWord(i + 1, returnIdx);
                 final Word<I> currentTermSeq = this.terminatingSequences.get(sym);
 
                 if (currentTermSeq == null) {
                     newProcedures.add(sym);
-                    this.terminatingSequences.put(sym, potentialTermSeq);
+                    setTerminatingSequence(sym, potentialTermSeq);
                 } else if (potentialTermSeq.size() < currentTermSeq.size()) {
-                    this.terminatingSequences.put(sym, potentialTermSeq);
+                    setTerminatingSequence(sym, potentialTermSeq);
                 }
             }
         }
     }
 
-    private void extractPotentialAccessAndReturnSequences(final Word<I> input) {
+    /**
+     * Extracts potential access and return sequences from the invocations of the given word. The access sequence of an
+     * invocation is the minified prefix before its call symbol and the return sequence is the minified suffix after its
+     * return symbol. Since both only depend on the invocation tree, their sizes are computed in a forward and a
+     * backward pass and only the sequences of the best invocation of each procedure are materialized.
+     */
+    private void extractPotentialAccessAndReturnSequences(final InvocationTree<I> tree) {
+
+        final Word<I> input = tree.getWord();
+        final int length = input.size();
+
+        // the sizes of the minified prefixes [0, i) and of the minified suffixes [i, length)
+        final int[] prefixSizes = new int[length + 1];
+        final int[] suffixSizes = new int[length + 1];
+
+        for (int i = 0; i < length; i++) {
+            final int callIdx = this.alphabet.isReturnSymbol(input.getSymbol(i)) ? tree.getMatchingIndex(i) : -1;
+
+            if (callIdx < 0) {
+                prefixSizes[i + 1] = prefixSizes[i] + 1;
+            } else {
+                final I procedure = input.getSymbol(callIdx);
+                prefixSizes[i + 1] = prefixSizes[callIdx] + getEmbeddedSize(procedure);
+            }
+        }
+
+        for (int i = length - 1; i >= 0; i--) {
+            final I sym = input.getSymbol(i);
+            final int returnIdx = this.alphabet.isCallSymbol(sym) ? tree.getMatchingIndex(i) : -1;
 
-        final List<I> asBuilder = new ArrayList<>(input.size());
-        final List<I> rsBuilder = new ArrayList<>(input.size());
-        rsBuilder.addAll(minifyWellMatched(input).asList());
+            if (returnIdx < 0) {
+                suffixSizes[i] = suffixSizes[i + 1] + 1;
+            } else {
+                suffixSizes[i] = suffixSizes[returnIdx + 1] + getEmbeddedSize(sym);
+            }
+        }
 
-        for (int i = 0; i < input.size(); i++) {
+        // the call indices and costs of the best invocations that improve the current sequences
+        final Map<I, Integer> bestCallIndices = new LinkedHashMap<>();
+        final Map<I, Integer> bestCosts = new HashMap<>();
 
+        for (int i = 0; i < length; i++) {
             final I sym = input.getSymbol(i);
 
             if (this.alphabet.isCallSymbol(sym)) {
+                final int returnIdx = tree.getMatchingIndex(i);
 
-                final Word<I> currentAccSeq = this.accessSequences.get(sym);
-
-                final int returnIdx = transformationUtil.findReturnIndex(rsBuilder, 1);
-
-                final List<I> potentialFinSeq = rsBuilder.subList(returnIdx + 1, rsBuilder.size());
-                final Word<I> currentFinSeq = this.returnSequences.get(sym);
+                if (returnIdx < 0) {
+                    continue;
+                }
 
-                if (currentAccSeq == null ||
-                    (asBuilder.size() + potentialFinSeq.size()) < (currentAccSeq.size() + currentFinSeq.size())) {
+                final int cost = prefixSizes[i] + suffixSizes[returnIdx + 1];
+                final Integer bestCost = bestCosts.get(sym);
 
-                    this.accessSequences.put(sym, Word.fromList(asBuilder));
-                    this.returnSequences.put(sym, Word.fromList(potentialFinSeq));
+                if (cost < (bestCost == null ? getCurrentCost(sym) : bestCost)) {
+                    bestCallIndices.put(sym, i);
+                    bestCosts.put(sym, cost);
                 }
-            } else if (this.alphabet.isReturnSymbol(sym)) {
-                // update asBuilder
-                final int callIdx = transformationUtil.findCallIndex(asBuilder, asBuilder.size());
-                final I procedure = asBuilder.get(callIdx);
-                asBuilder.subList(callIdx + 1, asBuilder.size()).clear();
-                asBuilder.addAll(terminatingSequences.get(procedure).asList());
             }
+        }
 
-            asBuilder.add(sym);
-            rsBuilder.remove(0);
+        for (final Map.Entry<I, Integer> e : bestCallIndices.entrySet()) {
+            final int callIdx = e.getValue();
+            final int returnIdx = tree.getMatchingIndex(callIdx);
 
-            if (this.alphabet.isCallSymbol(sym)) {
-                // updateRSBuilder
-                final int rsBuilderReturnIdx = transformationUtil.findReturnIndex(rsBuilder, 0);
-                final int inputReturnIdx = transformationUtil.findReturnIndex(input, i + 1);
-                rsBuilder.subList(0, rsBuilderReturnIdx).clear();
-                rsBuilder.addAll(0, minifyWellMatched(input.subWord(i + 1, inputReturnIdx)).asList());
-            }
+            this.accessSequences.put(e.getKey(), minifyWellMatched(tree, 0, callIdx));
+            this.returnSequences.put(e.getKey(), minifyWellMatched(tree, returnIdx + 1, length));
+        }
+    }
+
+    /**
+     * Returns the size of the minified invocation (call symbol, terminating sequence and return symbol) of the given
+     * procedure.
+     */
+    private int getEmbeddedSize(I procedure) {
+        return this.terminatingSequences.get(procedure).size() + 2;
+    }
+
+    private int getCurrentCost(I procedure) {
+        final Word<I> accessSequence = this.accessSequences.get(procedure);
 
+        if (accessSequence == null) {
+            return Integer.MAX_VALUE;
         }
+
+        return accessSequence.size() + this.returnSequences.get(procedure).size();
     }
 
     private Word<I> minifyWellMatched(Word<I> input) {
@@ -206,23 +271,36 @@ public class OptimizingATRProvider<I> implements ATRProvider<I> {
             return Word.epsilon();
         }
 
-        final WordBuilder<I> wb = new WordBuilder<>(input.size());
+        return minifyWellMatched(new InvocationTree<>(this.alphabet, input), 0, input.size());
+    }
 
-        for (int i = 0; i < input.size(); i++) {
+    /**
+     * Minifies the sub-word {@code [from, to)} of the indexed word.
+     */
+    private Word<I> minifyWellMatched(InvocationTree<I> tree, int from, int to) {
 
-            final I sym = input.getSymbol(i);
+        if (from >= to) {
+            return Word.epsilon();
+        }
 
-            wb.append(sym);
+        final Word<I> input = tree.getWord();
+        final WordBuilder<I> wb = new WordBuilder<>(to - from);
+
+        for (int i = from; i < to; i++) {
+
+            final I sym = input.getSymbol(i);
 
             if (this.alphabet.isCallSymbol(sym)) {
-                final int returnIdx = transformationUtil.findReturnIndex(input, i + 1);
+                final int returnIdx = tree.getMatchingIndex(i);
 
-                if (returnIdx > -1) {
-                    wb.append(terminatingSequences.get(sym));
-                    wb.append(alphabet.getReturnSymbol());
+                if (returnIdx > -1 && returnIdx < to) {
+                    wb.append(embeddedTerminatingSequences.get(sym));
                     i = returnIdx; // next loop iteration starts _after_ the return symbol
+                    continue;
                 }
             }
+
+            wb.append(sym);
         }
 
         return wb.toWord();
@@ -0,0 +1,175 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EmptyStackException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * An immutable stack, represented as a cons-list. Pushing and popping elements is done in constant time and stacks
+ * that are derived from each other share their common suffix. The hash code and the depth of a stack are computed once
+ * upon construction, which allows for cheap comparisons of (deep) stacks.
+ *
+ * @param <E>
+ *         element type
+ *
+ * @author frohme
+ */
+public final class PersistentStack<E> implements Iterable<E> {
+
+    private static final PersistentStack<?> EMPTY = new PersistentStack<>();
+
+    private final E top;
+    private final PersistentStack<E> rest;
+    private final int depth;
+    private final int hash;
+
+    private PersistentStack() {
+        this.top = null;
+        this.rest = null;
+        this.depth = 0;
+        this.hash = 1;
+    }
+
+    private PersistentStack(E top, PersistentStack<E> rest) {
+        this.top = top;
+        this.rest = rest;
+        this.depth = rest.depth + 1;
+        this.hash = 31 * rest.hash + Objects.hashCode(top);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentStack<E> empty() {
+        return (PersistentStack<E>) EMPTY;
+    }
+
+    /**
+     * Returns a new stack with the given element on top of the elements of this stack. This stack is not modified.
+     */
+    public PersistentStack<E> push(E element) {
+        return new PersistentStack<>(element, this);
+    }
+
+    /**
+     * Returns the top-most element of this stack.
+     *
+     * @throws EmptyStackException
+     *         if this stack is empty
+     */
+    public E peek() {
+        if (isEmpty()) {
+            throw new EmptyStackException();
+        }
+        return top;
+    }
+
+    /**
+     * Returns the stack without its top-most element. This stack is not modified.
+     *
+     * @throws EmptyStackException
+     *         if this stack is empty
+     */
+    public PersistentStack<E> pop() {
+        if (isEmpty()) {
+            throw new EmptyStackException();
+        }
+        return rest;
+    }
+
+    public boolean isEmpty() {
+        return depth == 0;
+    }
+
+    public int size() {
+        return depth;
+    }
+
+    /**
+     * Iterates over the elements of this stack, starting with the top-most element.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+
+            private PersistentStack<E> current = PersistentStack.this;
+
+            @Override
+            public boolean hasNext() {
+                return !current.isEmpty();
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final E result = current.top;
+                current = current.rest;
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        PersistentStack<?> that = (PersistentStack<?>) o;
+
+        if (depth != that.depth || hash != that.hash) {
+            return false;
+        }
+
+        PersistentStack<?> left = this;
+        PersistentStack<?> right = that;
+
+        // stop as soon as we reach a shared suffix
+        while (left != right) {
+            if (!Objects.equals(left.top, right.top)) {
+                return false;
+            }
+            left = left.rest;
+            right = right.rest;
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        // print bottom-to-top, similar to java.util.Stack
+        final List<E> elements = new ArrayList<>(depth);
+        for (final E e : this) {
+            elements.add(e);
+        }
+        Collections.reverse(elements);
+        return elements.toString();
+    }
+}
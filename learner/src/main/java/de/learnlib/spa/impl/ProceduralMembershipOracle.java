@@ -20,6 +20,7 @@ import java.util.List;
 
 import de.learnlib.api.oracle.MembershipOracle;
 import de.learnlib.api.query.Query;
+import de.learnlib.spa.TransformationUtil;
 import de.learnlib.spa.api.ATRProvider;
 import de.learnlib.spa.api.SPAAlphabet;
 import net.automatalib.words.Word;
@@ -31,6 +32,7 @@ public class ProceduralMembershipOracle<I> implements MembershipOracle<I, Boolea
     private final MembershipOracle<I, Boolean> delegate;
     private final I procedure;
     private final ATRProvider<I> atrProvider;
+    private final TransformationUtil<I> transformationUtil;
 
     public ProceduralMembershipOracle(SPAAlphabet<I> alphabet,
                                       MembershipOracle<I, Boolean> delegate,
@@ -40,6 +42,7 @@ public class ProceduralMembershipOracle<I> implements MembershipOracle<I, Boolea
         this.delegate = delegate;
         this.procedure = procedure;
         this.atrProvider = atrProvider;
+        this.transformationUtil = new TransformationUtil<>(alphabet);
     }
 
     @Override
@@ -59,28 +62,39 @@ public class ProceduralMembershipOracle<I> implements MembershipOracle<I, Boolea
     }
 
     private Word<I> transformLocalQuery(Word<I> query) {
-        final WordBuilder<I> builder = new WordBuilder<>();
-        builder.append(atrProvider.getAccessSequence(this.procedure));
+        final Word<I> accessSequence = atrProvider.getAccessSequence(this.procedure);
+        final Word<I> returnSequence = atrProvider.getReturnSequence(this.procedure);
+
+        // determine the exact length first, so that the builder's array is the only allocation
+        int length = accessSequence.size() + returnSequence.size() + 2;
+        for (final I i : query) {
+            length += alphabet.isCallSymbol(i) ? getEmbeddedTerminatingSequence(i).size() : 1;
+        }
+
+        final WordBuilder<I> builder = new WordBuilder<>(length);
+        builder.append(accessSequence);
         builder.append(this.procedure);
 
         for (final I i : query) {
             if (alphabet.isInternalSymbol(i)) {
                 builder.append(i);
             } else if (alphabet.isCallSymbol(i)) {
-                builder.append(i);
-                builder.append(atrProvider.getTerminatingSequence(i));
-                builder.append(alphabet.getReturnSymbol());
+                builder.append(getEmbeddedTerminatingSequence(i));
             } else { // return symbol
                 throw new IllegalStateException("Systems should not query reset symbol");
             }
         }
 
         builder.append(alphabet.getReturnSymbol());
-        builder.append(atrProvider.getReturnSequence(this.procedure));
+        builder.append(returnSequence);
 
         return builder.toWord();
     }
 
+    private Word<I> getEmbeddedTerminatingSequence(I procedure) {
+        return atrProvider.getEmbeddedTerminatingSequence(procedure, transformationUtil);
+    }
+
     private class TransformedQuery extends Query<I, Boolean> {
 
         private final Query<I, Boolean> originalQuery;
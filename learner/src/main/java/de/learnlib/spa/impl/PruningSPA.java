@@ -0,0 +1,111 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import de.learnlib.api.oracle.QueryAnswerer;
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.graphs.Graph;
+import net.automatalib.words.Word;
+
+/**
+ * An {@link SPA} wrapper that answers membership queries ({@link #accepts(Iterable)}, {@link
+ * #computeSuffixOutput(Iterable, Iterable)}) by a pruning simulation: a word is rejected as soon as the current
+ * configuration can no longer be completed to an accepted word, i.e. if a procedure reaches a state that is not
+ * co-reachable to an accepting state (using internal symbols and calls to terminating procedures).
+ * <p>
+ * Upon construction, the wrapped SPA is compiled into a {@link CompactSPA} (see {@link CompactSPA#of(SPA)}) and its
+ * co-reachable states are computed eagerly (see {@link AbstractCompactSPA#computeCoReachableStates()}). Hence, this
+ * wrapper pays off for long-lived instances (e.g. the system under learning) that answer many (long) queries. The
+ * procedures of the wrapped SPA must not be modified afterwards. The transition system view (e.g. {@link
+ * #getTransition(Object, Object)}) is not pruned and delegates to the wrapped SPA.
+ *
+ * @param <S>
+ *         state type
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class PruningSPA<S, I> implements SPA<S, I>, QueryAnswerer<I, Boolean> {
+
+    private final SPA<S, I> delegate;
+    private final AbstractCompactSPA<I> compactSPA;
+    private final boolean[][] coReachableStates;
+
+    public PruningSPA(SPA<S, I> delegate) {
+        this.delegate = delegate;
+        this.compactSPA = CompactSPA.of(delegate);
+        this.coReachableStates = compactSPA.computeCoReachableStates();
+    }
+
+    @Override
+    public boolean accepts(Iterable<? extends I> input) {
+        return compactSPA.accepts(input, coReachableStates);
+    }
+
+    @Override
+    public Boolean computeSuffixOutput(Iterable<? extends I> prefix, Iterable<? extends I> suffix) {
+        return compactSPA.computeSuffixOutput(prefix, suffix, coReachableStates);
+    }
+
+    @Nullable
+    @Override
+    public Boolean answerQuery(Word<I> prefix, Word<I> suffix) {
+        return computeSuffixOutput(prefix, suffix);
+    }
+
+    @Nullable
+    @Override
+    public I getInitialProcedure() {
+        return delegate.getInitialProcedure();
+    }
+
+    @Override
+    public SPAAlphabet<I> getInputAlphabet() {
+        return delegate.getInputAlphabet();
+    }
+
+    @Override
+    public Map<I, DFA<?, I>> getProcedures() {
+        return delegate.getProcedures();
+    }
+
+    @Override
+    public Graph<?, ?> graphView() {
+        return delegate.graphView();
+    }
+
+    @Nullable
+    @Override
+    public S getTransition(S state, I input) {
+        return delegate.getTransition(state, input);
+    }
+
+    @Override
+    public boolean isAccepting(S state) {
+        return delegate.isAccepting(state);
+    }
+
+    @Override
+    public S getInitialState() {
+        return delegate.getInitialState();
+    }
+}
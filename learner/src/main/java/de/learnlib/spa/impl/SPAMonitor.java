@@ -0,0 +1,317 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.util.Arrays;
+
+import de.learnlib.spa.api.SPA;
+
+/**
+ * A runtime monitor that checks many independent event streams (sessions) against an SPA at once.
+ * <p>
+ * The procedures of the SPA are compiled to a {@link CompactSPA} (unless the SPA already is an {@link
+ * AbstractCompactSPA}) and the configuration of each session is stored in packed primitive arrays, indexed by the
+ * session id: the current procedure id, the current state, the status of the session and a segment of (procedure id,
+ * continuation state) pairs that represents the call stack. Processing an event via {@link #step(int, Object)}
+ * therefore takes constant time and does not allocate any objects (except for growing the stack segment of a session,
+ * which happens amortized).
+ * <p>
+ * Violations are flagged immediately, i.e. on the first event after which the session can no longer be extended to an
+ * accepted word. To do so, the monitor pre-computes which states of the procedures can still reach an accepting state
+ * (see {@link CompactSPA#computeCoReachableStates()}).
+ * <p>
+ * Session ids are re-used after a session has been {@link #closeSession(int) closed}. This class is not thread-safe.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class SPAMonitor<I> {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final int DEFAULT_STACK_CAPACITY = 8;
+
+    private static final int NO_PROCEDURE = -1;
+
+    private static final int STATUS_CLOSED = 0;
+    private static final int STATUS_PENDING = 1;
+    private static final int STATUS_ACCEPTED = 2;
+    private static final int STATUS_VIOLATED = 3;
+
+    private final AbstractCompactSPA<I> spa;
+    private final int numInternals;
+    private final int numProceduralInputs;
+    private final int returnCode;
+    private final int initialProcedureId;
+    private final boolean[][] coReachable;
+
+    // per-session configurations
+    private int[] procedures;
+    private int[] states;
+    private int[] status;
+    private int[] depths;
+    private int[][] stacks;
+    private long[] positions;
+
+    // free list of closed session ids
+    private int[] freeIds;
+    private int numFreeIds;
+    private int numSessions;
+
+    public SPAMonitor(SPA<?, I> spa) {
+        this(spa, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param spa
+     *         the SPA whose procedures should be monitored
+     * @param initialCapacity
+     *         the number of sessions for which memory is reserved upfront
+     */
+    public SPAMonitor(SPA<?, I> spa, int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+
+        this.spa = CompactSPA.of(spa);
+        this.numInternals = this.spa.getNumInternals();
+        this.numProceduralInputs = this.spa.getNumProceduralInputs();
+        this.returnCode = this.spa.getReturnCode();
+        this.initialProcedureId = this.spa.getInitialProcedureId();
+        this.coReachable = this.spa.computeCoReachableStates();
+
+        this.procedures = new int[initialCapacity];
+        this.states = new int[initialCapacity];
+        this.status = new int[initialCapacity];
+        this.depths = new int[initialCapacity];
+        this.stacks = new int[initialCapacity][];
+        this.positions = new long[initialCapacity];
+        this.freeIds = new int[initialCapacity];
+    }
+
+    /**
+     * Opens a new session.
+     *
+     * @return the id of the new session
+     */
+    public int openSession() {
+        final int id;
+
+        if (numFreeIds > 0) {
+            id = freeIds[--numFreeIds];
+        } else {
+            if (numSessions == status.length) {
+                grow();
+            }
+            id = numSessions++;
+        }
+
+        procedures[id] = NO_PROCEDURE;
+        states[id] = NO_PROCEDURE;
+        status[id] = STATUS_PENDING;
+        depths[id] = 0;
+        positions[id] = 0;
+
+        return id;
+    }
+
+    /**
+     * Closes the given session. Its id may be re-used by subsequent calls to {@link #openSession()}.
+     */
+    public void closeSession(int sessionId) {
+        checkOpen(sessionId);
+
+        status[sessionId] = STATUS_CLOSED;
+        freeIds[numFreeIds++] = sessionId;
+    }
+
+    /**
+     * Processes the next event of the given session.
+     *
+     * @param sessionId
+     *         the id of the session
+     * @param symbol
+     *         the event
+     *
+     * @return {@code false} if the session has (now or before) violated the SPA, {@code true} otherwise
+     */
+    public boolean step(int sessionId, I symbol) {
+        checkOpen(sessionId);
+
+        if (status[sessionId] == STATUS_VIOLATED) {
+            return false;
+        }
+
+        if (!process(sessionId, spa.getSymbolCode(symbol))) {
+            status[sessionId] = STATUS_VIOLATED;
+            return false;
+        }
+
+        positions[sessionId]++;
+        return true;
+    }
+
+    public Verdict getVerdict(int sessionId) {
+        checkOpen(sessionId);
+
+        switch (status[sessionId]) {
+            case STATUS_ACCEPTED:
+                return Verdict.ACCEPTED;
+            case STATUS_VIOLATED:
+                return Verdict.VIOLATED;
+            default:
+                return Verdict.PENDING;
+        }
+    }
+
+    /**
+     * Returns the (0-based) position of the event that caused the violation of the given session, or {@code -1} if the
+     * session has not violated the SPA (yet).
+     */
+    public long getViolationPosition(int sessionId) {
+        checkOpen(sessionId);
+        return status[sessionId] == STATUS_VIOLATED ? positions[sessionId] : -1;
+    }
+
+    /**
+     * Returns the number of currently open sessions.
+     */
+    public int getNumOpenSessions() {
+        return numSessions - numFreeIds;
+    }
+
+    private boolean process(int id, int code) {
+        if (code < 0 || status[id] == STATUS_ACCEPTED) {
+            return false;
+        }
+
+        final int procedure = procedures[id];
+
+        if (code < numInternals) {
+            if (procedure == NO_PROCEDURE) {
+                return false;
+            }
+
+            final int next = spa.getIntSuccessor(procedure, states[id], code);
+            if (next < 0 || !coReachable[procedure][next]) {
+                return false;
+            }
+
+            states[id] = next;
+            return true;
+        } else if (code < numProceduralInputs) {
+            final int callee = code - numInternals;
+            final int calleeInit = spa.getIntInitialState(callee);
+
+            if (calleeInit < 0 || !coReachable[callee][calleeInit]) {
+                return false;
+            }
+
+            final int continuation;
+
+            if (procedure == NO_PROCEDURE) {
+                if (callee != initialProcedureId) {
+                    return false;
+                }
+                continuation = NO_PROCEDURE;
+            } else {
+                continuation = spa.getIntSuccessor(procedure, states[id], code);
+                if (continuation < 0 || !coReachable[procedure][continuation]) {
+                    return false;
+                }
+            }
+
+            push(id, procedure, continuation);
+            procedures[id] = callee;
+            states[id] = calleeInit;
+            return true;
+        } else if (code == returnCode) {
+            if (procedure == NO_PROCEDURE || !spa.isIntAccepting(procedure, states[id])) {
+                return false;
+            }
+
+            final int[] stack = stacks[id];
+            final int depth = depths[id] - 2;
+
+            depths[id] = depth;
+            procedures[id] = stack[depth];
+            states[id] = stack[depth + 1];
+
+            if (stack[depth] == NO_PROCEDURE) {
+                status[id] = STATUS_ACCEPTED;
+            }
+
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    private void push(int id, int procedure, int continuation) {
+        int[] stack = stacks[id];
+        final int depth = depths[id];
+
+        if (stack == null) {
+            stack = new int[DEFAULT_STACK_CAPACITY * 2];
+            stacks[id] = stack;
+        } else if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+            stacks[id] = stack;
+        }
+
+        stack[depth] = procedure;
+        stack[depth + 1] = continuation;
+        depths[id] = depth + 2;
+    }
+
+    private void grow() {
+        final int capacity = status.length * 2;
+
+        procedures = Arrays.copyOf(procedures, capacity);
+        states = Arrays.copyOf(states, capacity);
+        status = Arrays.copyOf(status, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        stacks = Arrays.copyOf(stacks, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        freeIds = Arrays.copyOf(freeIds, capacity);
+    }
+
+    private void checkOpen(int sessionId) {
+        if (sessionId < 0 || sessionId >= numSessions || status[sessionId] == STATUS_CLOSED) {
+            throw new IllegalArgumentException("Session " + sessionId + " is not open");
+        }
+    }
+
+    /**
+     * The verdict of a monitored session.
+     */
+    public enum Verdict {
+        /**
+         * The events of the session so far can still be extended to an accepted word.
+         */
+        PENDING,
+        /**
+         * The events of the session form an accepted word.
+         */
+        ACCEPTED,
+        /**
+         * The events of the session can no longer be extended to an accepted word.
+         */
+        VIOLATED
+    }
+}
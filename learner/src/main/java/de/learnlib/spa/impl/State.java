@@ -19,7 +19,8 @@ import java.util.Stack;
 import net.automatalib.commons.util.Pair;
 
 /**
- * A state in a {@link DefaultSPA}. Consist of a location and a stack content.
+ * A state in a {@link DefaultSPA}. Consist of a location and a stack content. Internally, the stack is persistent, i.e.
+ * successor states share the stack content of their predecessors (see {@link #getPersistentStack()}).
  *
  * @param <I>
  *         input symbol type
@@ -30,23 +31,37 @@ import net.automatalib.commons.util.Pair;
  */
 public class State<I, S> extends Pair<I, S> {
 
-    private final Stack<State<I, S>> stack;
+    private final PersistentStack<State<I, S>> stack;
 
     public State(I first, S second) {
         super(first, second);
-        this.stack = new Stack<>();
+        this.stack = PersistentStack.empty();
     }
 
     public State(I first, S second, final Stack<State<I, S>> stack) {
+        this(first, second, toPersistentStack(stack));
+    }
+
+    public State(I first, S second, Stack<State<I, S>> stack, State<I, S> newTopOfStack) {
+        this(first, second, toPersistentStack(stack), newTopOfStack);
+    }
+
+    public State(I first, S second, final PersistentStack<State<I, S>> stack) {
         super(first, second);
         this.stack = stack;
     }
 
-    @SuppressWarnings("unchecked")
-    public State(I first, S second, Stack<State<I, S>> stack, State<I, S> newTopOfStack) {
+    public State(I first, S second, PersistentStack<State<I, S>> stack, State<I, S> newTopOfStack) {
         super(first, second);
-        this.stack = (Stack<State<I, S>>) stack.clone();
-        this.stack.add(newTopOfStack);
+        this.stack = stack.push(newTopOfStack);
+    }
+
+    private static <E> PersistentStack<E> toPersistentStack(Stack<E> stack) {
+        PersistentStack<E> result = PersistentStack.empty();
+        for (final E e : stack) {
+            result = result.push(e);
+        }
+        return result;
     }
 
     @Override
@@ -57,7 +72,7 @@ public class State<I, S> extends Pair<I, S> {
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (getStack() != null ? getStack().hashCode() : 0);
+        result = 31 * result + (stack != null ? stack.hashCode() : 0);
         return result;
     }
 
@@ -75,10 +90,32 @@ public class State<I, S> extends Pair<I, S> {
 
         State<?, ?> that = (State<?, ?>) o;
 
-        return getStack().equals(that.getStack());
+        return stack.equals(that.stack);
     }
 
+    /**
+     * Returns a copy of the stack content of this state, with the top-most element at the end. Note that this copies
+     * the complete stack on every invocation.
+     *
+     * @deprecated use {@link #getPersistentStack()}, which does not copy the stack content.
+     */
+    @Deprecated
     public Stack<State<I, S>> getStack() {
+        final Stack<State<I, S>> result = new Stack<>();
+        result.setSize(stack.size());
+
+        int i = stack.size();
+        for (final State<I, S> s : stack) {
+            result.set(--i, s);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the (immutable) stack content of this state without copying it.
+     */
+    public PersistentStack<State<I, S>> getPersistentStack() {
         return stack;
     }
 }
@@ -0,0 +1,247 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import net.automatalib.automata.fsa.DFA;
+
+/**
+ * A membership checker that consumes its input symbol by symbol, e.g. from an {@link Iterator} or a decoded {@link
+ * InputStream}, without materializing the input word. The only memory required is the current call stack, which holds
+ * for each active invocation the procedure and the state in which the procedure continues after the invocation
+ * returns.
+ * <p>
+ * Besides the verdict, the acceptor reports the position of the first failing symbol, i.e. the first symbol that
+ * cannot be processed by the SPA (an undefined transition, a call that is not permitted in the current state of the
+ * calling procedure, a return from a non-accepting state, or any symbol after the initial procedure has terminated).
+ * Consumption of the input stops at this symbol. If the input ends before the initial procedure has terminated, the
+ * failing position is the length of the input.
+ *
+ * @param <I>
+ *         input symbol type
+ *
+ * @author frohme
+ */
+public class StreamingSPAAcceptor<I> {
+
+    private static final int DEFAULT_STACK_CAPACITY = 16;
+
+    private final SPAAlphabet<I> alphabet;
+    private final I initialProcedure;
+    private final Map<I, DFA<Object, I>> procedures;
+
+    @SuppressWarnings("unchecked")
+    public StreamingSPAAcceptor(SPA<?, I> spa) {
+        this.alphabet = spa.getInputAlphabet();
+        this.initialProcedure = spa.getInitialProcedure();
+        this.procedures = new HashMap<>((Map<I, DFA<Object, I>>) (Map<I, ?>) spa.getProcedures());
+    }
+
+    public Result accepts(Iterator<? extends I> input) {
+        final Run run = new Run();
+
+        while (input.hasNext()) {
+            if (!run.step(input.next())) {
+                return new Result(false, run.position);
+            }
+        }
+
+        return run.finish();
+    }
+
+    /**
+     * Checks the symbols of the given stream.
+     *
+     * @param input
+     *         the input stream
+     * @param decoder
+     *         the decoder that extracts the individual symbols from the stream
+     *
+     * @return the result of the check
+     *
+     * @throws IOException
+     *         if reading from the stream fails
+     */
+    public Result accepts(InputStream input, SymbolDecoder<? extends I> decoder) throws IOException {
+        final Run run = new Run();
+        I sym;
+
+        while ((sym = decoder.decode(input)) != null) {
+            if (!run.step(sym)) {
+                return new Result(false, run.position);
+            }
+        }
+
+        return run.finish();
+    }
+
+    /**
+     * Decodes input symbols from an {@link InputStream}.
+     *
+     * @param <I>
+     *         input symbol type
+     */
+    @FunctionalInterface
+    public interface SymbolDecoder<I> {
+
+        /**
+         * Reads the next symbol from the given stream.
+         *
+         * @param input
+         *         the stream to read from
+         *
+         * @return the next symbol, or {@code null} if the end of the stream has been reached
+         *
+         * @throws IOException
+         *         if reading from the stream fails
+         */
+        @Nullable
+        I decode(InputStream input) throws IOException;
+    }
+
+    /**
+     * The result of a check.
+     */
+    public static final class Result {
+
+        private final boolean accepted;
+        private final long failingPosition;
+
+        Result(boolean accepted, long failingPosition) {
+            this.accepted = accepted;
+            this.failingPosition = failingPosition;
+        }
+
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        /**
+         * Returns the (0-based) position of the first failing symbol, or {@code -1} if the input has been accepted.
+         */
+        public long getFailingPosition() {
+            return failingPosition;
+        }
+
+        @Override
+        public String toString() {
+            return accepted ? "accepted" : "rejected at position " + failingPosition;
+        }
+    }
+
+    private final class Run {
+
+        private Object[] procedureStack = new Object[DEFAULT_STACK_CAPACITY];
+        private Object[] stateStack = new Object[DEFAULT_STACK_CAPACITY];
+        private int depth;
+
+        private I procedure;
+        private Object state;
+        private boolean terminated;
+        private long position;
+
+        boolean step(I sym) {
+            if (!process(sym)) {
+                return false;
+            }
+            position++;
+            return true;
+        }
+
+        private boolean process(I sym) {
+            if (terminated) {
+                return false;
+            } else if (alphabet.isInternalSymbol(sym)) {
+                if (procedure == null) {
+                    return false;
+                }
+
+                state = procedures.get(procedure).getSuccessor(state, sym);
+                return state != null;
+            } else if (alphabet.isCallSymbol(sym)) {
+                final DFA<Object, I> callee = procedures.get(sym);
+
+                if (callee == null || callee.getInitialState() == null) {
+                    return false;
+                }
+
+                final Object continuation;
+
+                if (procedure == null) {
+                    if (!sym.equals(initialProcedure)) {
+                        return false;
+                    }
+                    continuation = null;
+                } else {
+                    continuation = procedures.get(procedure).getSuccessor(state, sym);
+                    if (continuation == null) {
+                        return false;
+                    }
+                }
+
+                if (depth == procedureStack.length) {
+                    procedureStack = Arrays.copyOf(procedureStack, depth * 2);
+                    stateStack = Arrays.copyOf(stateStack, depth * 2);
+                }
+
+                procedureStack[depth] = procedure;
+                stateStack[depth] = continuation;
+                depth++;
+
+                procedure = sym;
+                state = callee.getInitialState();
+                return true;
+            } else if (alphabet.isReturnSymbol(sym)) {
+                if (procedure == null || !procedures.get(procedure).isAccepting(state)) {
+                    return false;
+                }
+
+                depth--;
+
+                @SuppressWarnings("unchecked")
+                final I caller = (I) procedureStack[depth];
+
+                procedure = caller;
+                state = stateStack[depth];
+
+                // allow for garbage collection
+                procedureStack[depth] = null;
+                stateStack[depth] = null;
+
+                if (caller == null) {
+                    terminated = true;
+                }
+
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        Result finish() {
+            return terminated ? new Result(true, -1) : new Result(false, position);
+        }
+    }
+}
@@ -16,13 +16,20 @@ package de.learnlib.spa.learner;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
-import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
 
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -32,23 +39,36 @@ import de.learnlib.api.algorithm.feature.SupportsGrowingAlphabet;
 import de.learnlib.api.oracle.MembershipOracle;
 import de.learnlib.api.query.DefaultQuery;
 import de.learnlib.filter.statistic.oracle.JointCounterOracle;
+import de.learnlib.spa.InvocationTree;
 import de.learnlib.spa.LocalRefinementCounter;
 import de.learnlib.spa.TransformationUtil;
 import de.learnlib.spa.api.ATRProvider;
+import de.learnlib.spa.api.GlobalCEAnalyzer;
 import de.learnlib.spa.api.SPA;
 import de.learnlib.spa.api.SPAAlphabet;
 import de.learnlib.spa.impl.DefaultSPA;
+import de.learnlib.spa.impl.DefaultSPAAlphabet;
 import de.learnlib.spa.impl.EmptySPA;
+import de.learnlib.spa.impl.GlobalCEAnalyzers;
 import de.learnlib.spa.impl.OptimizingATRProvider;
 import de.learnlib.spa.impl.ProceduralMembershipOracle;
 import de.learnlib.util.MQUtil;
+import net.automatalib.automata.concepts.StateIDs;
 import net.automatalib.automata.fsa.DFA;
+import net.automatalib.automata.fsa.impl.compact.CompactDFA;
 import net.automatalib.words.Alphabet;
 import net.automatalib.words.Word;
 import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.SimpleAlphabet;
 
 /**
  * The learning algorithm for {@link DefaultSPA}s.
+ * <p>
+ * The learner supports growing alphabets: new internal and call symbols first need to be added to the {@link
+ * SPAAlphabet} of the learner (e.g. via {@link DefaultSPAAlphabet#addInternalSymbol(Object)} or {@link
+ * DefaultSPAAlphabet#addCallSymbol(Object)}) and then announced via {@link #addAlphabetSymbol(Object)}. All
+ * sub-learners and access, terminating and return sequences are kept. Note that new call symbols are only learned
+ * once witnessed by a positive counterexample (see {@link #addAlphabetSymbol(Object)}).
  *
  * @param <I>
  *         input symbol type
@@ -58,12 +78,15 @@ import net.automatalib.words.WordBuilder;
  * @author frohme
  */
 public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsGrowingAlphabet<I> & AccessSequenceTransformer<I> & LocalRefinementCounter>
-        implements LearningAlgorithm<SPA<?, I>, I, Boolean> {
+        implements LearningAlgorithm<SPA<?, I>, I, Boolean>, SupportsGrowingAlphabet<I> {
 
     private final SPAAlphabet<I> alphabet;
     private final MembershipOracle<I, Boolean> oracle;
     private final BiFunction<Alphabet<I>, MembershipOracle<I, Boolean>, L> learnerProvider;
     private final ATRProvider<I> atrProvider;
+    @Nullable
+    private final Executor executor;
+    private final GlobalCEAnalyzer ceAnalyzer;
 
     private final Map<I, L> subLearners;
     private final TransformationUtil<I> transformationUtil;
@@ -71,6 +94,15 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
     private final Set<I> activeAlphabet;
     private I initialCallSymbol;
     private long numberOfRefinements;
+    private long numberOfAnalyses;
+    private long numberOfAnalysisRounds;
+    private long numberOfAnalysisQueries;
+
+    // frozen copies of the local hypotheses and the procedures whose sub-learners have changed since freezing
+    private Map<I, CompactDFA<I>> snapshots;
+    private final Set<I> staleProcedures;
+    private Alphabet<I> proceduralAlphabet;
+    private SPA<?, I> hypothesis;
 
     public SPALearner(final SPAAlphabet<I> alphabet,
                       final MembershipOracle<I, Boolean> oracle,
@@ -82,10 +114,64 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
                       final MembershipOracle<I, Boolean> oracle,
                       final BiFunction<Alphabet<I>, MembershipOracle<I, Boolean>, L> learnerProvider,
                       final ATRProvider<I> atrProvider) {
+        this(alphabet, oracle, learnerProvider, atrProvider, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param alphabet
+     *         the alphabet of the system
+     * @param oracle
+     *         the membership oracle of the system
+     * @param learnerProvider
+     *         the provider for the sub-learners of the procedures
+     * @param atrProvider
+     *         the provider for access, terminating and return sequences
+     * @param executor
+     *         if non-{@code null}, the sub-learners of independent procedures (e.g. when ensuring the conformance of
+     *         terminating sequences) are refined concurrently by tasks of this executor. Their queries are posed to the
+     *         given membership oracle concurrently as well, which therefore needs to be thread-safe. The results are
+     *         merged in a deterministic order
+     */
+    public SPALearner(final SPAAlphabet<I> alphabet,
+                      final MembershipOracle<I, Boolean> oracle,
+                      final BiFunction<Alphabet<I>, MembershipOracle<I, Boolean>, L> learnerProvider,
+                      final ATRProvider<I> atrProvider,
+                      @Nullable final Executor executor) {
+        this(alphabet, oracle, learnerProvider, atrProvider, executor, GlobalCEAnalyzers.BINARY_SEARCH);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param alphabet
+     *         the alphabet of the system
+     * @param oracle
+     *         the membership oracle of the system
+     * @param learnerProvider
+     *         the provider for the sub-learners of the procedures
+     * @param atrProvider
+     *         the provider for access, terminating and return sequences
+     * @param executor
+     *         the (optional) executor for refining sub-learners concurrently, see {@link #SPALearner(SPAAlphabet,
+     *         MembershipOracle, BiFunction, ATRProvider, Executor)}
+     * @param ceAnalyzer
+     *         the analyzer for locating the rejecting procedure of negative counterexamples, e.g. {@link
+     *         GlobalCEAnalyzers#speculative(int)} for posing several decompositions per round as a single batch
+     */
+    public SPALearner(final SPAAlphabet<I> alphabet,
+                      final MembershipOracle<I, Boolean> oracle,
+                      final BiFunction<Alphabet<I>, MembershipOracle<I, Boolean>, L> learnerProvider,
+                      final ATRProvider<I> atrProvider,
+                      @Nullable final Executor executor,
+                      final GlobalCEAnalyzer ceAnalyzer) {
         this.alphabet = alphabet;
         this.oracle = oracle;
         this.learnerProvider = learnerProvider;
         this.atrProvider = atrProvider;
+        this.executor = executor;
+        this.ceAnalyzer = ceAnalyzer;
 
         this.subLearners = Maps.newHashMapWithExpectedSize(this.alphabet.getNumCalls());
         this.transformationUtil = new TransformationUtil<>(alphabet);
@@ -93,6 +179,10 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
 
         this.activeAlphabet = Sets.newHashSetWithExpectedSize(alphabet.getNumCalls() + alphabet.getNumInternals());
         this.activeAlphabet.addAll(alphabet.getInternalAlphabet());
+
+        this.snapshots = Collections.emptyMap();
+        this.staleProcedures = Sets.newHashSetWithExpectedSize(this.alphabet.getNumCalls());
+        this.proceduralAlphabet = createProceduralAlphabet();
     }
 
     @Override
@@ -103,13 +193,16 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
     @Override
     public boolean refineHypothesis(DefaultQuery<I, Boolean> defaultQuery) {
 
-        boolean changed = this.extractUsefulInformationFromCounterExample(defaultQuery);
+        // index the invocations of the counterexample once for all subsequent analyses
+        final InvocationTree<I> tree = new InvocationTree<>(this.alphabet, defaultQuery.getInput());
+
+        boolean changed = this.extractUsefulInformationFromCounterExample(defaultQuery, tree);
 
         if (changed) {
             numberOfRefinements++;
         }
 
-        while (refineHypothesisInternal(defaultQuery)) {
+        while (refineHypothesisInternal(defaultQuery, tree)) {
             numberOfRefinements++;
             changed = true;
         }
@@ -117,7 +210,7 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
         return changed;
     }
 
-    private boolean refineHypothesisInternal(DefaultQuery<I, Boolean> defaultQuery) {
+    private boolean refineHypothesisInternal(DefaultQuery<I, Boolean> defaultQuery, InvocationTree<I> tree) {
 
         final SPA<?, I> hypothesis = this.getHypothesisModel();
 
@@ -133,19 +226,28 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
         final int returnIdx;
 
         if (defaultQuery.getOutput()) {
-            returnIdx = detectRejectingProcedure(getHypothesisModel()::accepts, input);
+            // the hypothesis is a white box, so we can directly determine a rejecting procedure
+            returnIdx = getHypothesisModel().findRejectedInvocation(input);
+
+            // the refinements for ensuring TS conformance may already have fixed all rejecting procedures
+            if (returnIdx < 0) {
+                if (!localRefinement) {
+                    throw new AssertionError();
+                }
+                return true;
+            }
         } else {
-            returnIdx = detectRejectingProcedure(this.ceOracle::answerQuery, input);
+            returnIdx = detectRejectingProcedure(this.ceOracle, tree);
         }
 
         // extract local ce
-        final int callIdx = transformationUtil.findCallIndex(input, returnIdx);
+        final int callIdx = tree.findCallIndex(returnIdx);
         final I procedure = input.getSymbol(callIdx);
 
-        final Word<I> localTrace = transformationUtil.normalize(input.subWord(callIdx + 1, returnIdx), 0);
+        final Word<I> localTrace = transformationUtil.normalize(tree, callIdx + 1, returnIdx);
         final DefaultQuery<I, Boolean> localCE = new DefaultQuery<>(localTrace, defaultQuery.getOutput());
 
-        localRefinement |= this.subLearners.get(procedure).refineHypothesis(localCE);
+        localRefinement |= refineSubLearner(procedure, localCE);
 
         if (!localRefinement) {
             throw new AssertionError();
@@ -154,18 +256,201 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
         return true;
     }
 
+    /**
+     * Refines the hypothesis with a batch of counterexamples, e.g. all counterexamples found by an equivalence oracle
+     * in one round. Duplicate counterexamples (w.r.t. their input) are only considered once.
+     * <p>
+     * In each round, all counterexamples that are still not handled correctly by the current hypothesis are analyzed
+     * with respect to this (same) hypothesis. The extracted local counterexamples are grouped by procedure and each
+     * sub-learner is refined once per round with all of its local counterexamples (concurrently for different
+     * procedures, if an executor is configured). Hence, the conformance of terminating sequences is only ensured once
+     * per round instead of once per counterexample. The global analyses of the negative counterexamples of a round are
+     * interleaved, i.e. their decompositions are tested in a single batch per analysis step.
+     *
+     * @param counterexamples
+     *         the counterexamples
+     *
+     * @return {@code true} if the hypothesis has changed
+     *
+     * @throws IllegalArgumentException
+     *         if a positive counterexample cannot be attributed to a rejected invocation, e.g. if the positive
+     *         counterexamples are rooted at different (initial) procedures
+     */
+    public boolean refineHypothesis(Collection<? extends DefaultQuery<I, Boolean>> counterexamples) {
+
+        final Map<Word<I>, DefaultQuery<I, Boolean>> uniqueCEs = new LinkedHashMap<>();
+        I initialProcedure = null;
+
+        for (final DefaultQuery<I, Boolean> ce : counterexamples) {
+            if (ce.getOutput()) {
+                // positive CEs should always be rooted at the (same) main procedure
+                final I procedure = ce.getInput().firstSymbol();
+                if (initialProcedure == null) {
+                    initialProcedure = procedure;
+                } else if (!initialProcedure.equals(procedure)) {
+                    throw new IllegalArgumentException("Positive counterexamples of different initial procedures '" +
+                                                       initialProcedure + "' and '" + procedure + '\'');
+                }
+            }
+            uniqueCEs.putIfAbsent(ce.getInput(), ce);
+        }
+
+        final List<DefaultQuery<I, Boolean>> queries = new ArrayList<>(uniqueCEs.values());
+        final List<InvocationTree<I>> trees = new ArrayList<>(queries.size());
+
+        boolean changed = false;
+
+        for (final DefaultQuery<I, Boolean> query : queries) {
+            final InvocationTree<I> tree = new InvocationTree<>(this.alphabet, query.getInput());
+            trees.add(tree);
+
+            if (this.extractUsefulInformationFromCounterExample(query, tree)) {
+                numberOfRefinements++;
+                changed = true;
+            }
+        }
+
+        while (refineHypothesisInternal(queries, trees)) {
+            numberOfRefinements++;
+            changed = true;
+        }
+
+        return changed;
+    }
+
+    private boolean refineHypothesisInternal(List<DefaultQuery<I, Boolean>> queries, List<InvocationTree<I>> trees) {
+
+        final SPA<?, I> hypothesis = this.getHypothesisModel();
+        final List<Integer> pending = new ArrayList<>(queries.size());
+
+        for (int i = 0; i < queries.size(); i++) {
+            if (MQUtil.isCounterexample(queries.get(i), hypothesis)) {
+                pending.add(i);
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return false;
+        }
+
+        // look for better sequences and ensure TS conformance prior to CE analysis. Since this changes the hypothesis,
+        // the counterexamples are re-checked in the next round
+        if (updateATRAndCheckTSConformance(hypothesis)) {
+            return true;
+        }
+
+        // analyze all negative counterexamples of this round together
+        final List<InvocationTree<I>> negativeTrees = new ArrayList<>();
+        for (final int i : pending) {
+            if (!queries.get(i).getOutput()) {
+                negativeTrees.add(trees.get(i));
+            }
+        }
+
+        final int[] negativeReturnIndices = detectRejectingProcedures(this.ceOracle, negativeTrees);
+        int negativeIdx = 0;
+
+        final Map<I, List<DefaultQuery<I, Boolean>>> localCEs = new LinkedHashMap<>();
+        final Map<I, Set<Word<I>>> localTraces = new HashMap<>();
+
+        for (final int i : pending) {
+            final DefaultQuery<I, Boolean> query = queries.get(i);
+            final InvocationTree<I> tree = trees.get(i);
+            final Word<I> input = query.getInput();
+
+            final int returnIdx;
+
+            if (query.getOutput()) {
+                // the hypothesis is a white box, so we can directly determine a rejecting procedure
+                returnIdx = hypothesis.findRejectedInvocation(input);
+
+                if (returnIdx < 0) {
+                    throw new IllegalArgumentException("Positive counterexample '" + input +
+                                                       "' cannot be attributed to a rejected invocation");
+                }
+            } else {
+                returnIdx = negativeReturnIndices[negativeIdx++];
+            }
+
+            final int callIdx = tree.findCallIndex(returnIdx);
+            final I procedure = input.getSymbol(callIdx);
+            final Word<I> localTrace = transformationUtil.normalize(tree, callIdx + 1, returnIdx);
+
+            if (localTraces.computeIfAbsent(procedure, k -> new HashSet<>()).add(localTrace)) {
+                localCEs.computeIfAbsent(procedure, k -> new ArrayList<>())
+                        .add(new DefaultQuery<>(localTrace, query.getOutput()));
+            }
+        }
+
+        if (!refineSubLearners(localCEs)) {
+            throw new AssertionError();
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the current hypothesis. The procedures of the hypothesis are frozen {@link CompactDFA} copies of the
+     * local hypotheses, so the returned SPA is not affected by further refinements. Only the procedures whose
+     * sub-learners have changed are copied again, and the same instance is returned as long as no sub-learner has
+     * changed.
+     */
     @Override
     public SPA<?, I> getHypothesisModel() {
 
-        if (this.subLearners.isEmpty()) {
-            return new EmptySPA<>(this.alphabet);
+        if (this.hypothesis == null) {
+            if (this.subLearners.isEmpty()) {
+                this.hypothesis = new EmptySPA<>(this.alphabet);
+            } else {
+                this.hypothesis = new DefaultSPA<>(alphabet, initialCallSymbol, getSubModels());
+            }
+        }
+
+        return this.hypothesis;
+    }
+
+    /**
+     * Announces a new symbol of the {@link SPAAlphabet} of this learner. For internal symbols, the existing local
+     * hypotheses are extended by the new symbol.
+     * <p>
+     * For call symbols, only the procedural alphabet of the frozen local hypotheses (see {@link #getHypothesisModel()})
+     * is rebuilt. In particular, the existing local hypotheses are not extended by the new call symbol and hence reject
+     * any invocation of it. The corresponding procedure is only learned (and the call symbol is only added to the
+     * existing local hypotheses) once it is witnessed by a positive counterexample, as for any other not-yet-learned
+     * procedure.
+     *
+     * @throws IllegalArgumentException
+     *         if the symbol is not an internal or call symbol of the alphabet of this learner
+     */
+    @Override
+    public void addAlphabetSymbol(I symbol) {
+        if (!this.alphabet.isCallSymbol(symbol) && !this.alphabet.isInternalSymbol(symbol)) {
+            throw new IllegalArgumentException("Symbol needs to be added to the SPA alphabet first");
+        }
+
+        if (!this.proceduralAlphabet.contains(symbol)) {
+            // the frozen procedures are defined over the previous alphabet
+            this.proceduralAlphabet = createProceduralAlphabet();
+            invalidateAll();
+        }
+
+        if (this.alphabet.isCallSymbol(symbol) || !this.activeAlphabet.add(symbol)) {
+            return;
+        }
+
+        for (final Map.Entry<I, L> entry : this.subLearners.entrySet()) {
+            entry.getValue().addAlphabetSymbol(symbol);
+            invalidate(entry.getKey());
         }
 
-        final Map<I, ? extends DFA<?, I>> subModels = getSubModels();
-        return new DefaultSPA<>(alphabet, initialCallSymbol, (Map<I, DFA<Object, I>>) subModels);
+        // the new symbol may allow for shorter terminating sequences
+        if (!this.subLearners.isEmpty()) {
+            this.atrProvider.scanRefinedProcedures(getSubModels(), subLearners, activeAlphabet);
+        }
     }
 
-    private boolean extractUsefulInformationFromCounterExample(DefaultQuery<I, Boolean> defaultQuery) {
+    private boolean extractUsefulInformationFromCounterExample(DefaultQuery<I, Boolean> defaultQuery,
+                                                               InvocationTree<I> tree) {
 
         if (!defaultQuery.getOutput()) {
             return false;
@@ -174,17 +459,22 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
         final Word<I> input = defaultQuery.getInput();
 
         // positive CEs should always be rooted at the main procedure
-        this.initialCallSymbol = input.firstSymbol();
+        if (!input.firstSymbol().equals(this.initialCallSymbol)) {
+            this.initialCallSymbol = input.firstSymbol();
+            this.hypothesis = null;
+        }
 
-        final Set<I> newProcedures = atrProvider.scanPositiveCounterexample(input);
+        final Set<I> newProcedures = atrProvider.scanPositiveCounterexample(tree);
 
         for (I sym : newProcedures) {
-            final L newLearner = learnerProvider.apply(this.alphabet.getInternalAlphabet(),
+            // each sub-learner gets its own copy, since sub-learners may extend their alphabet in place
+            final L newLearner = learnerProvider.apply(new SimpleAlphabet<>(this.alphabet.getInternalAlphabet()),
                                                        new ProceduralMembershipOracle<>(alphabet,
                                                                                         oracle,
                                                                                         sym,
                                                                                         atrProvider));
             this.subLearners.put(sym, newLearner);
+            invalidate(sym);
 
             newLearner.startLearning();
             for (final I call : this.subLearners.keySet()) {
@@ -197,8 +487,9 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
                                                    activeAlphabet);
             this.activeAlphabet.add(sym);
 
-            for (final L learner : this.subLearners.values()) {
-                learner.addAlphabetSymbol(sym);
+            for (final Map.Entry<I, L> entry : this.subLearners.entrySet()) {
+                entry.getValue().addAlphabetSymbol(sym);
+                invalidate(entry.getKey());
             }
         }
 
@@ -210,19 +501,96 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
         }
     }
 
-    private Map<I, DFA<?, I>> getSubModels() {
-        final Map<I, DFA<?, I>> subModels = Maps.newHashMapWithExpectedSize(this.subLearners.size());
+    /**
+     * Returns the frozen local hypotheses, re-freezing only those of stale procedures. The returned map is unmodifiable
+     * and is replaced by a new map (copy-on-write) only if procedures have been re-frozen, so that previously returned
+     * hypotheses are not affected by later re-freezing and unchanged hypotheses are returned without allocation.
+     */
+    private Map<I, CompactDFA<I>> getSubModels() {
+        if (!this.staleProcedures.isEmpty()) {
+            // the inputs (and their indices in the procedural alphabet) currently known to the sub-learners
+            final List<I> inputs = new ArrayList<>(this.activeAlphabet.size());
+            final int[] inputIndices = new int[this.activeAlphabet.size()];
+
+            for (int i = 0; i < this.proceduralAlphabet.size(); i++) {
+                final I input = this.proceduralAlphabet.getSymbol(i);
+                if (this.activeAlphabet.contains(input)) {
+                    inputIndices[inputs.size()] = i;
+                    inputs.add(input);
+                }
+            }
 
-        for (final Map.Entry<I, L> entry : this.subLearners.entrySet()) {
-            subModels.put(entry.getKey(), entry.getValue().getHypothesisModel());
+            final Map<I, CompactDFA<I>> updatedSnapshots = new HashMap<>(this.snapshots);
+
+            for (final I procedure : this.staleProcedures) {
+                final DFA<?, I> localHypothesis = this.subLearners.get(procedure).getHypothesisModel();
+                updatedSnapshots.put(procedure, freeze(localHypothesis, inputs, inputIndices));
+            }
+
+            this.snapshots = Collections.unmodifiableMap(updatedSnapshots);
+            this.staleProcedures.clear();
+        }
+
+        return this.snapshots;
+    }
+
+    private <S> CompactDFA<I> freeze(DFA<S, I> dfa, List<I> inputs, int[] inputIndices) {
+        final CompactDFA<I> result = new CompactDFA<>(this.proceduralAlphabet, dfa.size());
+        final StateIDs<S> stateIDs = dfa.stateIDs();
+
+        for (int i = 0; i < dfa.size(); i++) {
+            result.addIntState(dfa.isAccepting(stateIDs.getState(i)));
+        }
+
+        for (int i = 0; i < dfa.size(); i++) {
+            final S s = stateIDs.getState(i);
+
+            for (int j = 0; j < inputs.size(); j++) {
+                final S succ = dfa.getSuccessor(s, inputs.get(j));
+                if (succ != null) {
+                    result.setTransition(i, inputIndices[j], stateIDs.getStateId(succ));
+                }
+            }
+        }
+
+        final S init = dfa.getInitialState();
+        if (init != null) {
+            result.setInitialState(stateIDs.getStateId(init));
+        }
+
+        return result;
+    }
+
+    private Alphabet<I> createProceduralAlphabet() {
+        final Alphabet<I> result = new SimpleAlphabet<>();
+        result.addAll(this.alphabet.getInternalAlphabet());
+        result.addAll(this.alphabet.getCallAlphabet());
+        return result;
+    }
+
+    private boolean refineSubLearner(I procedure, DefaultQuery<I, Boolean> localCE) {
+        final boolean refined = this.subLearners.get(procedure).refineHypothesis(localCE);
+
+        if (refined) {
+            invalidate(procedure);
         }
 
-        return subModels;
+        return refined;
+    }
+
+    private void invalidate(I procedure) {
+        this.staleProcedures.add(procedure);
+        this.hypothesis = null;
+    }
+
+    private void invalidateAll() {
+        this.staleProcedures.addAll(this.subLearners.keySet());
+        this.hypothesis = null;
     }
 
     private boolean updateATRAndCheckTSConformance(SPA<?, I> hypothesis) {
         boolean refinement = false;
-        Map<I, DFA<?, I>> subModels = hypothesis.getProcedures();
+        Map<I, ? extends DFA<?, I>> subModels = hypothesis.getProcedures();
 
         while (checkAndEnsureTSConformance(subModels)) {
             refinement = true;
@@ -233,109 +601,196 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
         return refinement;
     }
 
-    private <S> int detectRejectingProcedure(Predicate<Word<I>> rejectingSystem, Word<I> input) {
+    private int detectRejectingProcedure(MembershipOracle<I, Boolean> system, InvocationTree<I> tree) {
+        return detectRejectingProcedures(system, Collections.singletonList(tree))[0];
+    }
+
+    /**
+     * Analyzes the given (negative) counterexamples in an interleaved fashion: in each round, the probes of all
+     * unfinished analyses are posed to the system as a single batch, so that the number of round-trips is determined
+     * by the longest analysis instead of the sum of all analyses.
+     */
+    private int[] detectRejectingProcedures(MembershipOracle<I, Boolean> system, List<InvocationTree<I>> trees) {
 
-        final List<Integer> returnIndices = new ArrayList<>();
+        final List<List<Integer>> returnIndices = new ArrayList<>(trees.size());
+        final List<GlobalCEAnalyzer.Analysis> analyses = new ArrayList<>(trees.size());
 
-        for (int i = 0; i < input.length(); i++) {
-            if (this.alphabet.isReturnSymbol(input.getSymbol(i))) {
-                returnIndices.add(i);
+        for (final InvocationTree<I> tree : trees) {
+            final Word<I> input = tree.getWord();
+            final List<Integer> indices = new ArrayList<>();
+
+            for (int i = 0; i < input.length(); i++) {
+                if (this.alphabet.isReturnSymbol(input.getSymbol(i))) {
+                    indices.add(i);
+                }
             }
+
+            returnIndices.add(indices);
+            // the counterexample itself (-1) is rejected and we know that the last index (main procedure) is accepting
+            analyses.add(this.ceAnalyzer.start(-1, indices.size() - 1));
         }
 
-        // skip last index, because we know its accepting
-        int returnIdxPos = findLowestAcceptingReturnIndex(rejectingSystem,
-                                                          input,
-                                                          returnIndices.subList(0, returnIndices.size() - 1));
+        final int[][] positions = new int[trees.size()][];
+        final List<DefaultQuery<I, Boolean>> probes = new ArrayList<>();
 
-        // if everything is rejecting the error happens at the main procedure
-        if (returnIdxPos == -1) {
-            returnIdxPos = returnIndices.size() - 1;
-        }
+        while (true) {
+            probes.clear();
 
-        return returnIndices.get(returnIdxPos);
-    }
+            for (int k = 0; k < analyses.size(); k++) {
+                final GlobalCEAnalyzer.Analysis analysis = analyses.get(k);
+
+                if (analysis.isFinished()) {
+                    positions[k] = null;
+                    continue;
+                }
 
-    private int findLowestAcceptingReturnIndex(Predicate<? super Word<I>> system,
-                                               Word<I> input,
-                                               List<Integer> returnIndices) {
+                positions[k] = analysis.getPositions();
 
-        int lower = 0;
-        int upper = returnIndices.size() - 1;
-        int result = -1;
+                for (final int pos : positions[k]) {
+                    final Word<I> decomposition = buildDecomposition(trees.get(k), returnIndices.get(k).get(pos) + 1);
+                    probes.add(new DefaultQuery<>(Word.epsilon(), decomposition));
+                }
+            }
 
-        while (upper - lower > -1) {
-            final int mid = lower + ((upper - lower) / 2);
-            final int returnIdx = returnIndices.get(mid);
+            if (probes.isEmpty()) {
+                break;
+            }
 
-            final boolean answer = acceptsDecomposition(system, input, returnIdx + 1);
+            system.processQueries(probes);
+            this.numberOfAnalysisRounds++;
+            this.numberOfAnalysisQueries += probes.size();
 
-            if (answer) {
-                result = mid;
-                upper = mid - 1;
-            } else {
-                lower = mid + 1;
+            int offset = 0;
+            for (int k = 0; k < analyses.size(); k++) {
+                if (positions[k] == null) {
+                    continue;
+                }
+
+                final boolean[] answers = new boolean[positions[k].length];
+                for (int i = 0; i < answers.length; i++) {
+                    answers[i] = probes.get(offset++).getOutput();
+                }
+                analyses.get(k).processAnswers(answers);
             }
         }
 
+        final int[] result = new int[trees.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = returnIndices.get(k).get(analyses.get(k).getResult());
+        }
+        this.numberOfAnalyses += result.length;
+
         return result;
     }
 
-    private boolean acceptsDecomposition(Predicate<? super Word<I>> system, Word<I> input, int idxAfterReturn) {
+    private Word<I> buildDecomposition(InvocationTree<I> tree, int idxAfterReturn) {
+        final Word<I> input = tree.getWord();
         final Deque<Word<I>> wordStack = new ArrayDeque<>();
         int idx = idxAfterReturn;
+        int length = input.size() - idxAfterReturn;
 
         while (idx > 0) {
-            final int callIdx = transformationUtil.findCallIndex(input, idx);
+            final int callIdx = tree.findCallIndex(idx);
             final I callSymbol = input.getSymbol(callIdx);
-            final Word<I> normalized = transformationUtil.normalize(input.subWord(callIdx + 1, idx), 0);
-            final Word<I> expanded = transformationUtil.expand(normalized, this.atrProvider::getTerminatingSequence);
+            final Word<I> normalized = transformationUtil.normalize(tree, callIdx + 1, idx);
+            final Word<I> expanded =
+                    transformationUtil.expandEmbedded(normalized, this::getEmbeddedTerminatingSequence);
 
-            wordStack.push(expanded.prepend(callSymbol));
+            wordStack.push(expanded);
+            wordStack.push(Word.fromLetter(callSymbol));
+            length += expanded.size() + 1;
 
             idx = callIdx;
         }
 
-        final WordBuilder<I> builder = new WordBuilder<>();
+        final WordBuilder<I> builder = new WordBuilder<>(length);
         wordStack.forEach(builder::append);
         builder.append(input.subWord(idxAfterReturn));
 
-        return system.test(builder.toWord());
+        return builder.toWord();
     }
 
-    private boolean checkAndEnsureTSConformance(Map<I, DFA<?, I>> subModels) {
-        boolean refinement = false;
+    private Word<I> getEmbeddedTerminatingSequence(I procedure) {
+        return this.atrProvider.getEmbeddedTerminatingSequence(procedure, this.transformationUtil);
+    }
+
+    private boolean checkAndEnsureTSConformance(Map<I, ? extends DFA<?, I>> subModels) {
+        // the (frozen) hypotheses do not change during the check, so we can collect all local counterexamples first
+        final Map<I, List<DefaultQuery<I, Boolean>>> localCEs = new LinkedHashMap<>();
 
         for (final I procedure : this.subLearners.keySet()) {
-            final Word<I> terminatingSequence = this.atrProvider.getTerminatingSequence(procedure);
-            final WordBuilder<I> embeddedTS = new WordBuilder<>(terminatingSequence.size() + 2);
-            embeddedTS.append(procedure);
-            embeddedTS.append(terminatingSequence);
-            embeddedTS.append(alphabet.getReturnSymbol());
-            refinement |= checkSingleTerminatingSequence(embeddedTS.toWord(), subModels);
+            final Word<I> embeddedTS = getEmbeddedTerminatingSequence(procedure);
+            checkSingleTerminatingSequence(embeddedTS, subModels, localCEs);
         }
 
-        return refinement;
+        refineSubLearners(localCEs);
+
+        return !localCEs.isEmpty();
     }
 
-    private boolean checkSingleTerminatingSequence(Word<I> input, Map<I, DFA<?, I>> hypotheses) {
-        boolean refinement = false;
+    private void checkSingleTerminatingSequence(Word<I> input,
+                                                Map<I, ? extends DFA<?, I>> hypotheses,
+                                                Map<I, List<DefaultQuery<I, Boolean>>> localCEs) {
+        final InvocationTree<I> tree = new InvocationTree<>(this.alphabet, input);
 
         for (int i = 0; i < input.size(); i++) {
             final I sym = input.getSymbol(i);
 
             if (this.alphabet.isCallSymbol(sym)) {
-                final int returnIdx = this.transformationUtil.findReturnIndex(input, i + 1);
-                final Word<I> projectedRun = this.transformationUtil.normalize(input.subWord(i + 1, returnIdx), 0);
+                final int returnIdx = tree.getMatchingIndex(i);
+                final Word<I> projectedRun = this.transformationUtil.normalize(tree, i + 1, returnIdx);
 
                 if (!hypotheses.get(sym).accepts(projectedRun)) {
-                    refinement = true;
-                    subLearners.get(sym).refineHypothesis(new DefaultQuery<>(projectedRun, true));
+                    localCEs.computeIfAbsent(sym, k -> new ArrayList<>()).add(new DefaultQuery<>(projectedRun, true));
                 }
             }
         }
+    }
 
-        return refinement;
+    /**
+     * Refines the sub-learners of the given procedures with their respective local counterexamples (in order). If an
+     * executor is configured, the sub-learners of different procedures are refined concurrently.
+     *
+     * @return {@code true} if any sub-learner has been refined
+     */
+    private boolean refineSubLearners(Map<I, List<DefaultQuery<I, Boolean>>> localCEs) {
+        boolean refined = false;
+
+        if (this.executor == null || localCEs.size() < 2) {
+            for (final Map.Entry<I, List<DefaultQuery<I, Boolean>>> entry : localCEs.entrySet()) {
+                for (final DefaultQuery<I, Boolean> localCE : entry.getValue()) {
+                    refined |= refineSubLearner(entry.getKey(), localCE);
+                }
+            }
+            return refined;
+        }
+
+        // the sub-learners only share the ATR provider, which is not modified during refinement
+        final List<CompletableFuture<Boolean>> futures = new ArrayList<>(localCEs.size());
+
+        for (final Map.Entry<I, List<DefaultQuery<I, Boolean>>> entry : localCEs.entrySet()) {
+            final L learner = this.subLearners.get(entry.getKey());
+            final List<DefaultQuery<I, Boolean>> queries = entry.getValue();
+
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                boolean learnerRefined = false;
+                for (final DefaultQuery<I, Boolean> localCE : queries) {
+                    learnerRefined |= learner.refineHypothesis(localCE);
+                }
+                return learnerRefined;
+            }, this.executor));
+        }
+
+        // merge the results in the order of the given map
+        int i = 0;
+        for (final I procedure : localCEs.keySet()) {
+            if (futures.get(i++).join()) {
+                invalidate(procedure);
+                refined = true;
+            }
+        }
+
+        return refined;
     }
 
     public JointCounterOracle<I, Boolean> getCeOracle() {
@@ -346,6 +801,28 @@ public class SPALearner<I, L extends LearningAlgorithm.DFALearner<I> & SupportsG
         return numberOfRefinements;
     }
 
+    /**
+     * Returns the number of negative counterexamples analyzed by the configured {@link GlobalCEAnalyzer}.
+     */
+    public long getNumberOfGlobalAnalyses() {
+        return numberOfAnalyses;
+    }
+
+    /**
+     * Returns the number of query batches (i.e. round-trips to the system) spent on the analysis of negative
+     * counterexamples.
+     */
+    public long getNumberOfGlobalAnalysisRounds() {
+        return numberOfAnalysisRounds;
+    }
+
+    /**
+     * Returns the number of queries spent on the analysis of negative counterexamples.
+     */
+    public long getNumberOfGlobalAnalysisQueries() {
+        return numberOfAnalysisQueries;
+    }
+
     public long getNumberOfLocalRefinements() {
         long numberOfLocalRefinements = 0;
 
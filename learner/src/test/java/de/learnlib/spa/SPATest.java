@@ -14,7 +14,20 @@
  */
 package de.learnlib.spa;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
@@ -24,8 +37,11 @@ import de.learnlib.api.algorithm.feature.SupportsGrowingAlphabet;
 import de.learnlib.api.oracle.EquivalenceOracle;
 import de.learnlib.api.oracle.MembershipOracle;
 import de.learnlib.api.query.DefaultQuery;
+import de.learnlib.api.query.Query;
 import de.learnlib.oracle.membership.SimulatorOracle;
+import de.learnlib.spa.SPAEquivalenceChecker.Difference;
 import de.learnlib.spa.api.ATRProvider;
+import de.learnlib.spa.api.GlobalCEAnalyzer;
 import de.learnlib.spa.api.SPA;
 import de.learnlib.spa.api.SPAAlphabet;
 import de.learnlib.spa.config.DiscriminationTreeAdapter;
@@ -34,14 +50,24 @@ import de.learnlib.spa.config.LStarBaseAdapter;
 import de.learnlib.spa.config.RivestSchapireAdapter;
 import de.learnlib.spa.config.TTTAdapter;
 import de.learnlib.spa.impl.DefaultATRProvider;
+import de.learnlib.spa.impl.DefaultSPA;
 import de.learnlib.spa.impl.DefaultSPAAlphabet;
+import de.learnlib.spa.impl.GlobalCEAnalyzers;
 import de.learnlib.spa.impl.OptimizingATRProvider;
 import de.learnlib.spa.learner.SPALearner;
 import de.learnlib.spa.util.Generator;
 import de.learnlib.spa.util.SPAEQ;
 import de.learnlib.spa.util.Util;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.automata.fsa.impl.compact.CompactDFA;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.util.automata.copy.AutomatonCopyMethod;
+import net.automatalib.util.automata.copy.AutomatonLowLevelCopy;
 import net.automatalib.words.Alphabet;
+import net.automatalib.words.VPDAlphabet.SymbolType;
+import net.automatalib.words.Word;
 import net.automatalib.words.impl.Alphabets;
+import net.automatalib.words.impl.SimpleAlphabet;
 import org.testng.Assert;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.DataProvider;
@@ -62,7 +88,9 @@ public class SPATest {
 
     @DataProvider(name = "atr")
     public <I> Object[][] dataProvider() {
-        return new Object[][] {new Object[] {new DefaultSetup<I>()}, new Object[] {new OptimizingSetup<I>()}};
+        return new Object[][] {new Object[] {new DefaultSetup<I>()},
+                               new Object[] {new OptimizingSetup<I>()},
+                               new Object[] {new ForwardingSetup<I>()}};
     }
 
     @Test(dataProvider = "atr")
@@ -95,6 +123,345 @@ public class SPATest {
         Assert.assertTrue(Util.testEquivalence(spa, hyp));
     }
 
+    @Test
+    public void testGrowingAlphabet() {
+        final SPAAlphabet<Character> fullAlphabet =
+                new DefaultSPAAlphabet<>(Alphabets.characters('a', 'p'), Alphabets.characters('A', 'J'), 'R');
+        final SPA<?, Character> system = Generator.create(random, fullAlphabet, 20);
+
+        // withhold the last internal symbol and the last non-initial call symbol
+        final Character newInternal = 'p';
+        final Character newCall = system.getInitialProcedure() == 'J' ? 'I' : 'J';
+
+        final List<Character> calls = new ArrayList<>(fullAlphabet.getNumCalls() - 1);
+        for (final Character c : fullAlphabet.getCallAlphabet()) {
+            if (!c.equals(newCall)) {
+                calls.add(c);
+            }
+        }
+        final DefaultSPAAlphabet<Character> alphabet =
+                new DefaultSPAAlphabet<>(Alphabets.characters('a', 'o'), Alphabets.fromList(calls), 'R');
+
+        final Alphabet<Character> proceduralAlphabet = new SimpleAlphabet<>();
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+        proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+
+        final Map<Character, DFA<Integer, Character>> restrictedProcedures = new HashMap<>();
+        for (final Character procedure : alphabet.getCallAlphabet()) {
+            final CompactDFA<Character> copy = new CompactDFA<>(proceduralAlphabet);
+            AutomatonLowLevelCopy.copy(AutomatonCopyMethod.STATE_BY_STATE,
+                                       system.getProcedures().get(procedure),
+                                       proceduralAlphabet,
+                                       copy);
+            restrictedProcedures.put(procedure, copy);
+        }
+        final SPA<?, Character> restrictedSystem =
+                new DefaultSPA<>(alphabet, system.getInitialProcedure(), restrictedProcedures);
+
+        // queries over the restricted alphabet are answered by the full system
+        final SPALearner<Character, TTTAdapter<Character>> learner =
+                new SPALearner<>(alphabet, new SimulatorOracle<>(system), TTTAdapter::new);
+        learner.startLearning();
+
+        final SPA<?, Character> restrictedHyp = refineUntilEquivalent(learner, new SPAEQ<>(restrictedSystem), alphabet);
+        Assert.assertTrue(Util.testEquivalence(restrictedSystem, restrictedHyp));
+
+        Assert.assertTrue(alphabet.addInternalSymbol(newInternal));
+        Assert.assertTrue(alphabet.addCallSymbol(newCall));
+        Assert.assertFalse(alphabet.addCallSymbol(newCall));
+        Assert.assertEquals(alphabet.getSymbolType(newInternal), SymbolType.INTERNAL);
+        Assert.assertEquals(alphabet.getSymbolType(newCall), SymbolType.CALL);
+        Assert.assertEquals(alphabet.getReturnSymbol(), alphabet.getSymbol(alphabet.size() - 1));
+
+        learner.addAlphabetSymbol(newInternal);
+        learner.addAlphabetSymbol(newCall);
+
+        // previously learned procedures are kept
+        final SPA<?, Character> grownHyp = learner.getHypothesisModel();
+        Assert.assertEquals(grownHyp.getProcedures().keySet(), restrictedHyp.getProcedures().keySet());
+
+        final SPA<?, Character> hyp = refineUntilEquivalent(learner, new SPAEQ<>(system), alphabet);
+        Assert.assertTrue(Util.testEquivalence(system, hyp));
+    }
+
+    @Test
+    public void testParallelRefinement() {
+        // a counterexample that invokes several procedures whose initial local hypotheses reject their (unoptimized)
+        // terminating sequences yields local counterexamples for several procedures at once
+        final Word<Integer> initialCE = Generator.createTestWords(new Random(42), spa, 2000)
+                                                 .stream()
+                                                 .filter(spa::accepts)
+                                                 .max(Comparator.comparingLong(this::countNonEmptyInvocations))
+                                                 .orElseThrow(AssertionError::new);
+        final EquivalenceOracle<SPA<?, Integer>, Integer, Boolean> spaEQ = new SPAEQ<>(spa);
+        final EquivalenceOracle<SPA<?, Integer>, Integer, Boolean> eqOracle = (hyp, inputs) -> hyp.accepts(initialCE) ?
+                spaEQ.findCounterExample(hyp, inputs) :
+                new DefaultQuery<>(initialCE, true);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final ThreadSafeOracle<Integer> parallelOracle = new ThreadSafeOracle<>(new SimulatorOracle<>(spa));
+            final SPALearner<Integer, TTTAdapter<Integer>> parallelLearner =
+                    new SPALearner<>(alphabet,
+                                     parallelOracle,
+                                     TTTAdapter::new,
+                                     new DefaultATRProvider<>(alphabet),
+                                     executor);
+            parallelLearner.startLearning();
+            final SPA<?, Integer> parallelHyp = refineUntilEquivalent(parallelLearner, eqOracle, alphabet);
+
+            final ThreadSafeOracle<Integer> sequentialOracle = new ThreadSafeOracle<>(new SimulatorOracle<>(spa));
+            final SPALearner<Integer, TTTAdapter<Integer>> sequentialLearner =
+                    new SPALearner<>(alphabet,
+                                     sequentialOracle,
+                                     TTTAdapter::new,
+                                     new DefaultATRProvider<>(alphabet),
+                                     null);
+            sequentialLearner.startLearning();
+            final SPA<?, Integer> sequentialHyp = refineUntilEquivalent(sequentialLearner, eqOracle, alphabet);
+
+            Assert.assertTrue(Util.testEquivalence(spa, parallelHyp));
+            Assert.assertTrue(parallelOracle.hasOverlapped());
+            Assert.assertFalse(sequentialOracle.hasOverlapped());
+
+            // the concurrent refinements are merged deterministically
+            Assert.assertEquals(parallelOracle.getNumberOfQueries(), sequentialOracle.getNumberOfQueries());
+            Assert.assertEquals(parallelLearner.getNumberOfGlobalRefinements(),
+                                sequentialLearner.getNumberOfGlobalRefinements());
+            Assert.assertEquals(parallelLearner.getNumberOfLocalRefinements(),
+                                sequentialLearner.getNumberOfLocalRefinements());
+
+            final Alphabet<Integer> proceduralAlphabet = new SimpleAlphabet<>();
+            proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+            proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+
+            final Map<Integer, ? extends DFA<?, Integer>> parallelProcedures = parallelHyp.getProcedures();
+            final Map<Integer, ? extends DFA<?, Integer>> sequentialProcedures = sequentialHyp.getProcedures();
+            Assert.assertEquals(parallelProcedures.keySet(), sequentialProcedures.keySet());
+
+            for (final Integer procedure : parallelProcedures.keySet()) {
+                final DFA<?, Integer> parallelProcedure = parallelProcedures.get(procedure);
+                final DFA<?, Integer> sequentialProcedure = sequentialProcedures.get(procedure);
+                Assert.assertEquals(parallelProcedure.size(), sequentialProcedure.size());
+                Assert.assertTrue(Automata.testEquivalence(parallelProcedure, sequentialProcedure, proceduralAlphabet));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpeculativeCEAnalysis() {
+        final SPALearner<Integer, TTTAdapter<Integer>> learner = new SPALearner<>(alphabet,
+                                                                                  new SimulatorOracle<>(spa),
+                                                                                  TTTAdapter::new,
+                                                                                  new OptimizingATRProvider<>(alphabet),
+                                                                                  null,
+                                                                                  GlobalCEAnalyzers.speculative(3));
+        learner.startLearning();
+
+        final SPA<?, Integer> hyp = refineUntilEquivalent(learner, new SPAEQ<>(spa), alphabet);
+        Assert.assertTrue(Util.testEquivalence(spa, hyp));
+    }
+
+    @Test
+    public void testGlobalCEAnalyzers() {
+        final List<GlobalCEAnalyzer> analyzers = Arrays.asList(GlobalCEAnalyzers.LINEAR_FWD,
+                                                               GlobalCEAnalyzers.LINEAR_BWD,
+                                                               GlobalCEAnalyzers.BINARY_SEARCH,
+                                                               GlobalCEAnalyzers.EXPONENTIAL_FWD,
+                                                               GlobalCEAnalyzers.EXPONENTIAL_BWD,
+                                                               GlobalCEAnalyzers.RIVEST_SCHAPIRE,
+                                                               GlobalCEAnalyzers.speculative(3));
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 200; i++) {
+            // random (not necessarily monotone) outcomes for the positions -1 ... n, with the fixed outer ones
+            final int n = random.nextInt(40);
+            final boolean[] outcomes = new boolean[n + 2];
+            for (int j = 1; j <= n; j++) {
+                outcomes[j] = random.nextBoolean();
+            }
+            outcomes[n + 1] = true;
+
+            for (final GlobalCEAnalyzer analyzer : analyzers) {
+                final int breakpoint = analyzer.analyze(positions -> {
+                    final boolean[] result = new boolean[positions.length];
+                    for (int j = 0; j < positions.length; j++) {
+                        Assert.assertTrue(positions[j] >= 0 && positions[j] < n);
+                        result[j] = outcomes[positions[j] + 1];
+                    }
+                    return result;
+                }, -1, n);
+
+                Assert.assertTrue(outcomes[breakpoint + 1]);
+                Assert.assertFalse(outcomes[breakpoint]);
+            }
+        }
+
+        final SPALearner<Integer, TTTAdapter<Integer>> learner = new SPALearner<>(alphabet,
+                                                                                  new SimulatorOracle<>(spa),
+                                                                                  TTTAdapter::new,
+                                                                                  new OptimizingATRProvider<>(alphabet),
+                                                                                  null,
+                                                                                  GlobalCEAnalyzers.EXPONENTIAL_BWD);
+        learner.startLearning();
+
+        final SPA<?, Integer> hyp = refineUntilEquivalent(learner, new SPAEQ<>(spa), alphabet);
+        Assert.assertTrue(Util.testEquivalence(spa, hyp));
+        Assert.assertTrue(learner.getNumberOfGlobalAnalysisQueries() >= learner.getNumberOfGlobalAnalysisRounds());
+        Assert.assertTrue(learner.getNumberOfGlobalAnalysisRounds() >= learner.getNumberOfGlobalAnalyses());
+    }
+
+    @Test
+    public void testBatchRefinement() {
+        final List<Word<Integer>> testWords = Generator.createTestWords(new Random(42), spa, 2000);
+        final EquivalenceOracle<SPA<?, Integer>, Integer, Boolean> eqOracle = new SPAEQ<>(spa);
+        final SPALearner<Integer, TTTAdapter<Integer>> learner =
+                new SPALearner<>(alphabet, new SimulatorOracle<>(spa), TTTAdapter::new);
+        learner.startLearning();
+
+        SPA<?, Integer> hyp = learner.getHypothesisModel();
+        DefaultQuery<Integer, Boolean> ce;
+
+        while ((ce = eqOracle.findCounterExample(hyp, alphabet)) != null) {
+            // every test word (and the CE, twice) on which the hypothesis is wrong
+            final List<DefaultQuery<Integer, Boolean>> ces = new ArrayList<>();
+            ces.add(ce);
+            ces.add(ce);
+            for (final Word<Integer> w : testWords) {
+                final boolean output = spa.accepts(w);
+                if (output != hyp.accepts(w)) {
+                    ces.add(new DefaultQuery<>(w, output));
+                }
+            }
+
+            Assert.assertTrue(learner.refineHypothesis(ces));
+            hyp = learner.getHypothesisModel();
+
+            for (final DefaultQuery<Integer, Boolean> q : ces) {
+                Assert.assertEquals(hyp.accepts(q.getInput()), (boolean) q.getOutput());
+            }
+        }
+
+        Assert.assertTrue(Util.testEquivalence(spa, hyp));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBatchRefinementOfDifferentInitialProcedures() {
+        final SPALearner<Integer, TTTAdapter<Integer>> learner =
+                new SPALearner<>(alphabet, new SimulatorOracle<>(spa), TTTAdapter::new);
+        learner.startLearning();
+
+        final Integer returnSymbol = alphabet.getReturnSymbol();
+        final List<DefaultQuery<Integer, Boolean>> ces = new ArrayList<>();
+        ces.add(new DefaultQuery<>(Word.fromSymbols(10, returnSymbol), true));
+        ces.add(new DefaultQuery<>(Word.fromSymbols(11, returnSymbol), true));
+
+        learner.refineHypothesis(ces);
+    }
+
+    @Test
+    public void testEquivalenceChecker() {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final SPAEquivalenceChecker<Integer> checker = new SPAEquivalenceChecker<>(spa, executor);
+            Assert.assertTrue(checker.testEquivalence(spa));
+
+            // flip the acceptance of the initial state of every third procedure
+            final Map<Integer, CompactDFA<Integer>> procedures = copyProcedures(spa);
+
+            for (final Map.Entry<Integer, CompactDFA<Integer>> entry : procedures.entrySet()) {
+                if (entry.getKey() % 3 == 0) {
+                    final CompactDFA<Integer> dfa = entry.getValue();
+                    final Integer init = dfa.getInitialState();
+                    dfa.setAccepting(init, !dfa.isAccepting(init));
+                }
+            }
+
+            final SPA<?, Integer> mutant = new DefaultSPA<>(alphabet, spa.getInitialProcedure(), procedures);
+            final List<Difference<Integer>> differences = checker.findDifferences(mutant);
+
+            Assert.assertFalse(differences.isEmpty());
+            checkWitnesses(spa, mutant, differences);
+
+            // change the initial procedure
+            final Integer initialProcedure = alphabet.getCallSymbol(0).equals(spa.getInitialProcedure()) ?
+                    alphabet.getCallSymbol(1) :
+                    alphabet.getCallSymbol(0);
+            final SPA<?, Integer> other = new DefaultSPA<>(alphabet, initialProcedure, copyProcedures(spa));
+            final List<Difference<Integer>> initialDifferences = checker.findDifferences(other);
+
+            Assert.assertFalse(initialDifferences.isEmpty());
+            checkWitnesses(spa, other, initialDifferences);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEquivalenceCheckerIgnoresUnobservableDifferences() {
+        final Integer initialProcedure = spa.getInitialProcedure();
+        final Integer nonTerminatingProcedure = alphabet.getCallSymbol(0).equals(initialProcedure) ?
+                alphabet.getCallSymbol(1) :
+                alphabet.getCallSymbol(0);
+
+        // make one procedure non-terminating
+        final Map<Integer, CompactDFA<Integer>> procedures = copyProcedures(spa);
+        final CompactDFA<Integer> nonTerminating = procedures.get(nonTerminatingProcedure);
+
+        for (final Integer s : nonTerminating) {
+            nonTerminating.setAccepting(s, false);
+        }
+
+        final SPA<?, Integer> reference = new DefaultSPA<>(alphabet, initialProcedure, procedures);
+
+        // differences after calls of the non-terminating procedure cannot be observed
+        final Map<Integer, CompactDFA<Integer>> mutatedProcedures = copyProcedures(reference);
+        final CompactDFA<Integer> initial = mutatedProcedures.get(initialProcedure);
+        final Integer newState = initial.addState(true);
+        initial.setTransition(initial.getInitialState(), nonTerminatingProcedure, newState);
+
+        final SPA<?, Integer> mutant = new DefaultSPA<>(alphabet, initialProcedure, mutatedProcedures);
+
+        Assert.assertTrue(new SPAEquivalenceChecker<>(reference).testEquivalence(mutant));
+
+        final List<Difference<Integer>> differences = new SPAEquivalenceChecker<>(spa).findDifferences(reference);
+        Assert.assertFalse(differences.isEmpty());
+        checkWitnesses(spa, reference, differences);
+    }
+
+    private static Map<Integer, CompactDFA<Integer>> copyProcedures(SPA<?, Integer> source) {
+        final SPAAlphabet<Integer> alphabet = source.getInputAlphabet();
+        final Alphabet<Integer> proceduralAlphabet = new SimpleAlphabet<>();
+        proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+
+        final Map<Integer, CompactDFA<Integer>> result = new HashMap<>();
+
+        for (final Map.Entry<Integer, DFA<?, Integer>> entry : source.getProcedures().entrySet()) {
+            final CompactDFA<Integer> copy = new CompactDFA<>(proceduralAlphabet);
+            AutomatonLowLevelCopy.copy(AutomatonCopyMethod.STATE_BY_STATE,
+                                       entry.getValue(),
+                                       proceduralAlphabet,
+                                       copy);
+            result.put(entry.getKey(), copy);
+        }
+
+        return result;
+    }
+
+    private static void checkWitnesses(SPA<?, Integer> expected,
+                                       SPA<?, Integer> actual,
+                                       List<Difference<Integer>> differences) {
+        for (final Difference<Integer> d : differences) {
+            final Word<Integer> witness = d.getWitness();
+            Assert.assertEquals(expected.accepts(witness), d.getExpectedOutput(), d.toString());
+            Assert.assertNotEquals(actual.accepts(witness), d.getExpectedOutput(), d.toString());
+        }
+    }
+
     private <I, L extends LearningAlgorithm.DFALearner<I> & SupportsGrowingAlphabet<I> & AccessSequenceTransformer<I> & LocalRefinementCounter> SPA<?, I> learningLoop(
             final SPA<?, I> system,
             final BiFunction<Alphabet<I>, MembershipOracle<I, Boolean>, L> learnerProvider,
@@ -120,9 +487,89 @@ public class SPATest {
             hyp = learner.getHypothesisModel();
         }
 
+        // without further refinements, the cached hypothesis is returned
+        Assert.assertSame(learner.getHypothesisModel(), hyp);
+
         return hyp;
     }
 
+    private long countNonEmptyInvocations(Word<Integer> word) {
+        return word.stream()
+                   .filter(alphabet::isCallSymbol)
+                   .distinct()
+                   .filter(p -> !spa.getProcedures().get(p).accepts(Word.epsilon()))
+                   .count();
+    }
+
+    private <I> SPA<?, I> refineUntilEquivalent(LearningAlgorithm<SPA<?, I>, I, Boolean> learner,
+                                                EquivalenceOracle<SPA<?, I>, I, Boolean> eqOracle,
+                                                SPAAlphabet<I> alphabet) {
+        SPA<?, I> hyp = learner.getHypothesisModel();
+        DefaultQuery<I, Boolean> ce;
+
+        while ((ce = eqOracle.findCounterExample(hyp, alphabet)) != null) {
+            boolean refined = false;
+            while (learner.refineHypothesis(ce)) {
+                refined = true;
+            }
+            Assert.assertTrue(refined);
+            hyp = learner.getHypothesisModel();
+        }
+
+        return hyp;
+    }
+
+    /**
+     * A synchronized membership oracle that additionally witnesses whether queries have been posed concurrently by
+     * (at least) two threads other than the one that created the oracle.
+     */
+    private static class ThreadSafeOracle<I> implements MembershipOracle<I, Boolean> {
+
+        private final MembershipOracle<I, Boolean> delegate;
+        private final Thread owner;
+        private final Set<Thread> threads;
+        private final CountDownLatch overlap;
+        private volatile boolean overlapped;
+        private long numberOfQueries;
+
+        ThreadSafeOracle(MembershipOracle<I, Boolean> delegate) {
+            this.delegate = delegate;
+            this.owner = Thread.currentThread();
+            this.threads = ConcurrentHashMap.newKeySet();
+            this.overlap = new CountDownLatch(2);
+        }
+
+        @Override
+        public void processQueries(Collection<? extends Query<I, Boolean>> queries) {
+            final Thread current = Thread.currentThread();
+
+            // the first query of a foreign thread waits (briefly) for a query of a second foreign thread
+            if (current != this.owner && this.threads.add(current) && this.overlap.getCount() > 0) {
+                this.overlap.countDown();
+                try {
+                    if (this.overlap.await(10, TimeUnit.SECONDS)) {
+                        this.overlapped = true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            synchronized (this) {
+                this.delegate.processQueries(queries);
+                this.numberOfQueries += queries.size();
+            }
+        }
+
+        boolean hasOverlapped() {
+            return this.overlapped;
+        }
+
+        synchronized long getNumberOfQueries() {
+            return this.numberOfQueries;
+        }
+    }
+
     private static class DefaultSetup<I> implements Function<SPAAlphabet<I>, ATRProvider<I>> {
 
         @Override
@@ -149,5 +596,51 @@ public class SPATest {
         }
     }
 
+    /**
+     * A provider that only implements the mandatory methods of {@link ATRProvider}, as external implementations do.
+     */
+    private static class ForwardingSetup<I> implements Function<SPAAlphabet<I>, ATRProvider<I>> {
+
+        @Override
+        public ATRProvider<I> apply(SPAAlphabet<I> alphabet) {
+            final ATRProvider<I> delegate = new DefaultATRProvider<>(alphabet);
+
+            return new ATRProvider<I>() {
+
+                @Override
+                public Word<I> getAccessSequence(I procedure) {
+                    return delegate.getAccessSequence(procedure);
+                }
+
+                @Override
+                public Word<I> getTerminatingSequence(I procedure) {
+                    return delegate.getTerminatingSequence(procedure);
+                }
+
+                @Override
+                public Word<I> getReturnSequence(I procedure) {
+                    return delegate.getReturnSequence(procedure);
+                }
+
+                @Override
+                public Set<I> scanPositiveCounterexample(Word<I> counterexample) {
+                    return delegate.scanPositiveCounterexample(counterexample);
+                }
+
+                @Override
+                public void scanRefinedProcedures(Map<I, ? extends DFA<?, I>> procedures,
+                                                  Map<I, ? extends AccessSequenceTransformer<I>> providers,
+                                                  Collection<I> inputs) {
+                    delegate.scanRefinedProcedures(procedures, providers, inputs);
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "ForwardingATRProvider";
+        }
+    }
+
     ;
 }
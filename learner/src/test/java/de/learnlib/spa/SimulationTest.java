@@ -0,0 +1,772 @@
+/* Copyright (C) 2019 Markus Frohme.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.learnlib.spa;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import de.learnlib.spa.analysis.SPAAnalysis;
+import de.learnlib.spa.api.SPA;
+import de.learnlib.spa.api.SPAAlphabet;
+import de.learnlib.spa.impl.BinarySPAFormat;
+import de.learnlib.spa.impl.CompactSPA;
+import de.learnlib.spa.impl.DefaultSPA;
+import de.learnlib.spa.impl.DefaultSPAAlphabet;
+import de.learnlib.spa.impl.ForkJoinSPAAcceptor;
+import de.learnlib.spa.impl.MappedSPA;
+import de.learnlib.spa.impl.PruningSPA;
+import de.learnlib.spa.impl.SPAMonitor;
+import de.learnlib.spa.impl.SPAMonitor.Verdict;
+import de.learnlib.spa.impl.StreamingSPAAcceptor;
+import de.learnlib.spa.impl.StreamingSPAAcceptor.Result;
+import de.learnlib.spa.util.Generator;
+import net.automatalib.automata.fsa.DFA;
+import net.automatalib.automata.fsa.impl.compact.CompactDFA;
+import net.automatalib.commons.util.collections.CollectionsUtil;
+import net.automatalib.util.automata.Automata;
+import net.automatalib.util.automata.copy.AutomatonCopyMethod;
+import net.automatalib.util.automata.copy.AutomatonLowLevelCopy;
+import net.automatalib.words.Alphabet;
+import net.automatalib.words.VPDAlphabet.SymbolType;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
+import net.automatalib.words.impl.Alphabets;
+import net.automatalib.words.impl.SimpleAlphabet;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the different simulation strategies for SPAs agree with the reference semantics of the default SPA.
+ */
+public class SimulationTest {
+
+    private SPA<?, Integer> spa;
+    private List<Word<Integer>> testWords;
+
+    @BeforeClass
+    public void setUp() {
+        final Random random = new Random(42);
+        final SPAAlphabet<Integer> alphabet =
+                new DefaultSPAAlphabet<>(Alphabets.integers(10, 25), Alphabets.integers(0, 9), 26);
+        spa = Generator.create(random, alphabet, 20);
+        testWords = Generator.createTestWords(random, spa, 2000);
+    }
+
+    @Test
+    public void testTestWords() {
+        // sanity check that we test both accepted and rejected words
+        Assert.assertTrue(testWords.stream().anyMatch(spa::accepts));
+        Assert.assertTrue(testWords.stream().anyMatch(w -> !spa.accepts(w)));
+    }
+
+    @Test
+    public void testStateEquality() {
+        for (final Word<Integer> w : testWords) {
+            // use a proper prefix, so that we (most likely) end up in an intermediate configuration
+            final Word<Integer> prefix = w.prefix(w.size() - 1);
+            final Object s1 = spa.getState(prefix);
+            final Object s2 = spa.getState(prefix);
+
+            Assert.assertEquals(s1, s2);
+            Assert.assertEquals(s1.hashCode(), s2.hashCode());
+        }
+    }
+
+    @Test
+    public void testPruningSimulation() {
+        final PruningSPA<?, Integer> pruningSPA = new PruningSPA<>(spa);
+
+        for (final Word<Integer> w : testWords) {
+            // the transition system view is not pruned
+            final boolean expected = acceptsByTransitions(spa, w);
+            Assert.assertEquals(spa.accepts(w), expected, w.toString());
+            Assert.assertEquals(pruningSPA.accepts(w), expected, w.toString());
+            Assert.assertEquals(acceptsByTransitions(pruningSPA, w), expected, w.toString());
+
+            final int split = w.size() / 2;
+            Assert.assertEquals(pruningSPA.computeSuffixOutput(w.prefix(split), w.subWord(split)),
+                                Boolean.valueOf(expected));
+        }
+    }
+
+    @Test
+    public void testPruningOfNonTerminatingProcedures() {
+        final SPAAlphabet<Integer> alphabet = spa.getInputAlphabet();
+        final Alphabet<Integer> proceduralAlphabet = Alphabets.integers(0, 25);
+        final Integer blocked = alphabet.getCallAlphabet()
+                                        .stream()
+                                        .filter(c -> !c.equals(spa.getInitialProcedure()))
+                                        .findFirst()
+                                        .get();
+
+        // make one procedure non-terminating, so that its invocations can be pruned
+        final Map<Integer, CompactDFA<Integer>> procedures = new HashMap<>();
+        spa.getProcedures()
+           .forEach((p, dfa) -> procedures.put(p, copy(dfa, proceduralAlphabet, !p.equals(blocked))));
+
+        final SPA<?, Integer> blockedSPA = new DefaultSPA<>(alphabet, spa.getInitialProcedure(), procedures);
+        final PruningSPA<?, Integer> pruningSPA = new PruningSPA<>(blockedSPA);
+
+        // at least the (copied) initial state of the blocked procedure is no longer co-reachable
+        final boolean[][] coReachable = new CompactSPA<>(blockedSPA).computeCoReachableStates();
+        Assert.assertTrue(Arrays.stream(coReachable).anyMatch(states -> states.length > 0 && !states[0]));
+
+        for (final Word<Integer> w : testWords) {
+            Assert.assertEquals(pruningSPA.accepts(w), blockedSPA.accepts(w), w.toString());
+        }
+    }
+
+    @Test
+    public void testCompactSPA() {
+        final CompactSPA<Integer> compactSPA = new CompactSPA<>(spa);
+
+        Assert.assertEquals(compactSPA.size(), spa.size());
+
+        for (final Word<Integer> w : testWords) {
+            final boolean expected = spa.accepts(w);
+            Assert.assertEquals(compactSPA.accepts(w), expected, w.toString());
+            Assert.assertEquals(acceptsByTransitions(compactSPA, w), expected, w.toString());
+
+            final int split = w.size() / 2;
+            Assert.assertEquals(compactSPA.computeSuffixOutput(w.prefix(split), w.subWord(split)),
+                                Boolean.valueOf(expected));
+        }
+    }
+
+    @Test
+    public void testBinaryFormat() throws IOException {
+        final Path file = Files.createTempFile("spa", ".bin");
+
+        try {
+            BinarySPAFormat.write(spa, file, Object::toString);
+            final MappedSPA<Integer> mappedSPA = BinarySPAFormat.load(file, Integer::valueOf);
+
+            Assert.assertEquals(mappedSPA.getInputAlphabet(), spa.getInputAlphabet());
+            Assert.assertEquals(mappedSPA.getInitialProcedure(), spa.getInitialProcedure());
+            Assert.assertEquals(mappedSPA.size(), spa.size());
+
+            for (final Word<Integer> w : testWords) {
+                final boolean expected = spa.accepts(w);
+                Assert.assertEquals(mappedSPA.accepts(w), expected, w.toString());
+                Assert.assertEquals(acceptsByTransitions(mappedSPA, w), expected, w.toString());
+            }
+
+            // a round-trip yields the same file
+            final Path copy = Files.createTempFile("spa", ".bin");
+            BinarySPAFormat.write(mappedSPA, copy, Object::toString);
+            Assert.assertEquals(Files.readAllBytes(copy), Files.readAllBytes(file));
+            Files.delete(copy);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testBinaryFormatInvalidInput() throws IOException {
+        BinarySPAFormat.load(ByteBuffer.wrap(new byte[] {'D', 'O', 'T', 0}), Integer::valueOf);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testBinaryFormatCorruptTransition() throws IOException {
+        final Path file = Files.createTempFile("spa", ".bin");
+
+        try {
+            BinarySPAFormat.write(spa, file, Object::toString);
+            final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+
+            // skip the header and the symbols to find the procedure table
+            final int numInputs = buffer.getInt(8) + buffer.getInt(12);
+            int position = 20;
+            for (int i = 0; i <= numInputs; i++) {
+                position += 4 + buffer.getInt(position);
+            }
+
+            int entry = (position + 3) & ~3;
+            while (buffer.getInt(entry) < 0) {
+                entry += 12;
+            }
+
+            // let the first transition of the first procedure point to a non-existing state
+            buffer.putInt(buffer.getInt(entry + 8), buffer.getInt(entry));
+            BinarySPAFormat.load(buffer, Integer::valueOf);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testForkJoinAcceptor() {
+        // use a small threshold to actually fork tasks for our (short) test words
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            final ForkJoinSPAAcceptor<Integer> acceptor = new ForkJoinSPAAcceptor<>(spa, pool, 2);
+
+            for (final Word<Integer> w : testWords) {
+                Assert.assertEquals(acceptor.accepts(w), spa.accepts(w), w.toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testStreamingAcceptor() throws IOException {
+        final StreamingSPAAcceptor<Integer> acceptor = new StreamingSPAAcceptor<>(spa);
+
+        for (final Word<Integer> w : testWords) {
+            final boolean expected = spa.accepts(w);
+            final Result result = acceptor.accepts(w.iterator());
+
+            Assert.assertEquals(result.isAccepted(), expected, w.toString());
+
+            if (expected) {
+                Assert.assertEquals(result.getFailingPosition(), -1L);
+            } else {
+                // every symbol before the failing position can be processed, i.e. does not lead to the sink
+                final int failingPosition = (int) result.getFailingPosition();
+                final Object sink = spa.getState(Word.fromLetter(-1)); // not part of the alphabet
+
+                Assert.assertTrue(failingPosition >= 0 && failingPosition <= w.size());
+                Assert.assertNotEquals(spa.getState(w.prefix(failingPosition)), sink);
+            }
+
+            final byte[] bytes = new byte[w.size()];
+            for (int i = 0; i < w.size(); i++) {
+                bytes[i] = w.getSymbol(i).byteValue();
+            }
+
+            final Result streamResult = acceptor.accepts(new ByteArrayInputStream(bytes), in -> {
+                final int b = in.read();
+                return b < 0 ? null : b;
+            });
+
+            Assert.assertEquals(streamResult.isAccepted(), expected);
+            Assert.assertEquals(streamResult.getFailingPosition(), result.getFailingPosition());
+        }
+    }
+
+    @Test
+    public void testAlphabetClassification() {
+        // dense integers, sparse integers, enums and generic symbols use different lookups
+        checkClassification(new DefaultSPAAlphabet<>(Alphabets.integers(10, 25), Alphabets.integers(0, 9), 26),
+                            Arrays.asList(-1, 27, 100));
+        checkClassification(new DefaultSPAAlphabet<>(new SimpleAlphabet<>(Arrays.asList(1000, -1000)),
+                                                     new SimpleAlphabet<>(Arrays.asList(0, 1 << 20)),
+                                                     7),
+                            Arrays.asList(-1, 1, 27));
+        checkClassification(new DefaultSPAAlphabet<>(new SimpleAlphabet<>(Arrays.asList(Verdict.PENDING)),
+                                                     new SimpleAlphabet<>(Arrays.asList(Verdict.VIOLATED)),
+                                                     Verdict.ACCEPTED),
+                            Collections.emptyList());
+        checkClassification(new DefaultSPAAlphabet<>(Alphabets.characters('a', 'c'),
+                                                     Alphabets.characters('S', 'T'),
+                                                     'R'),
+                            Arrays.asList('d', 'U'));
+    }
+
+    private static <I> void checkClassification(SPAAlphabet<I> alphabet, List<I> foreignSymbols) {
+        for (int i = 0; i < alphabet.size(); i++) {
+            final I sym = alphabet.getSymbol(i);
+
+            Assert.assertEquals(alphabet.getSymbolIndex(sym), i);
+            Assert.assertTrue(alphabet.containsSymbol(sym));
+            Assert.assertEquals(alphabet.isInternalSymbol(sym), alphabet.getInternalAlphabet().containsSymbol(sym));
+            Assert.assertEquals(alphabet.isCallSymbol(sym), alphabet.getCallAlphabet().containsSymbol(sym));
+            Assert.assertEquals(alphabet.isReturnSymbol(sym), alphabet.getReturnAlphabet().containsSymbol(sym));
+
+            if (alphabet.isInternalSymbol(sym)) {
+                Assert.assertEquals(alphabet.getSymbolType(sym), SymbolType.INTERNAL);
+                Assert.assertEquals(alphabet.getInternalSymbolIndex(sym),
+                                    alphabet.getInternalAlphabet().getSymbolIndex(sym));
+            } else if (alphabet.isCallSymbol(sym)) {
+                Assert.assertEquals(alphabet.getSymbolType(sym), SymbolType.CALL);
+                Assert.assertEquals(alphabet.getCallSymbolIndex(sym), alphabet.getCallAlphabet().getSymbolIndex(sym));
+            } else {
+                Assert.assertEquals(alphabet.getSymbolType(sym), SymbolType.RETURN);
+            }
+        }
+
+        for (final I sym : foreignSymbols) {
+            Assert.assertFalse(alphabet.containsSymbol(sym));
+            Assert.assertFalse(alphabet.isInternalSymbol(sym));
+            Assert.assertFalse(alphabet.isCallSymbol(sym));
+            Assert.assertFalse(alphabet.isReturnSymbol(sym));
+        }
+    }
+
+    @Test
+    public void testRejectedInvocations() {
+        final SPAAlphabet<Integer> alphabet = spa.getInputAlphabet();
+        final TransformationUtil<Integer> transformationUtil = new TransformationUtil<>(alphabet);
+        int numChecked = 0;
+
+        for (final Word<Integer> w : testWords) {
+            // only consider well-matched words that consist of a single invocation
+            if (w.isEmpty() || !alphabet.isCallSymbol(w.firstSymbol()) || !alphabet.isWellMatched(w) ||
+                transformationUtil.findReturnIndex(w, 1) != w.size() - 1) {
+                continue;
+            }
+
+            final int returnIdx = spa.findRejectedInvocation(w);
+            final boolean rooted = w.firstSymbol().equals(spa.getInitialProcedure());
+
+            Assert.assertEquals(spa.accepts(w), rooted && returnIdx < 0, w.toString());
+
+            if (returnIdx >= 0) {
+                final int callIdx = transformationUtil.findCallIndex(w, returnIdx);
+                final Word<Integer> localWord = transformationUtil.normalize(w.subWord(callIdx + 1, returnIdx), 0);
+                Assert.assertFalse(spa.getProcedures().get(w.getSymbol(callIdx)).accepts(localWord));
+            }
+
+            numChecked++;
+        }
+
+        Assert.assertTrue(numChecked > 0);
+    }
+
+    @Test
+    public void testInvocationTree() {
+        final SPAAlphabet<Integer> alphabet = spa.getInputAlphabet();
+        final TransformationUtil<Integer> transformationUtil = new TransformationUtil<>(alphabet);
+
+        for (final Word<Integer> w : testWords) {
+            final InvocationTree<Integer> tree = new InvocationTree<>(alphabet, w);
+
+            for (int i = 0; i <= w.size(); i++) {
+                Assert.assertEquals(tree.findCallIndex(i), transformationUtil.findCallIndex(w, i));
+                Assert.assertEquals(tree.findReturnIndex(i), transformationUtil.findReturnIndex(w, i));
+            }
+
+            for (int i = 0; i < w.size(); i++) {
+                if (alphabet.isCallSymbol(w.getSymbol(i))) {
+                    final int returnIdx = transformationUtil.findReturnIndex(w, i + 1);
+                    Assert.assertEquals(tree.getMatchingIndex(i), returnIdx);
+                    Assert.assertEquals(tree.getParentIndex(i), transformationUtil.findCallIndex(w, i));
+
+                    if (returnIdx >= 0) {
+                        Assert.assertEquals(tree.getMatchingIndex(returnIdx), i);
+                        Assert.assertEquals(transformationUtil.normalize(tree, i + 1, returnIdx),
+                                            transformationUtil.normalize(w.subWord(i + 1, returnIdx), 0));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmbeddedExpansion() {
+        final SPAAlphabet<Integer> alphabet = spa.getInputAlphabet();
+        final TransformationUtil<Integer> transformationUtil = new TransformationUtil<>(alphabet);
+        final Map<Integer, Word<Integer>> terminatingSequences =
+                SPAUtil.computeTerminatingSequences(alphabet, spa.getProcedures());
+        final Map<Integer, Word<Integer>> embeddings = new HashMap<>();
+        terminatingSequences.forEach((p, ts) -> embeddings.put(p, transformationUtil.embed(p, ts)));
+
+        final Alphabet<Integer> proceduralAlphabet = new SimpleAlphabet<>();
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+        proceduralAlphabet.addAll(terminatingSequences.keySet());
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 500; i++) {
+            final WordBuilder<Integer> wb = new WordBuilder<>(20);
+            for (int j = 0; j < 20; j++) {
+                wb.append(proceduralAlphabet.getSymbol(random.nextInt(proceduralAlphabet.size())));
+            }
+            final Word<Integer> local = wb.toWord();
+            final Word<Integer> expanded = transformationUtil.expand(local, terminatingSequences::get);
+
+            Assert.assertEquals(transformationUtil.expandEmbedded(local, embeddings::get), expanded);
+            Assert.assertEquals(transformationUtil.normalize(expanded, 0), local);
+        }
+    }
+
+    @Test
+    public void testMonitor() {
+        // use a small capacity to also test growing
+        final SPAMonitor<Integer> monitor = new SPAMonitor<>(spa, 4);
+        final int[] sessions = new int[testWords.size()];
+
+        for (int i = 0; i < sessions.length; i++) {
+            sessions[i] = monitor.openSession();
+        }
+
+        // interleave the events of all sessions
+        final int maxLength = testWords.stream().mapToInt(Word::size).max().orElse(0);
+        for (int pos = 0; pos < maxLength; pos++) {
+            for (int i = 0; i < sessions.length; i++) {
+                final Word<Integer> w = testWords.get(i);
+                if (pos < w.size()) {
+                    monitor.step(sessions[i], w.getSymbol(pos));
+                }
+            }
+        }
+
+        final StreamingSPAAcceptor<Integer> acceptor = new StreamingSPAAcceptor<>(spa);
+        final Object sink = spa.getState(Word.fromLetter(-1)); // not part of the alphabet
+
+        for (int i = 0; i < sessions.length; i++) {
+            final Word<Integer> w = testWords.get(i);
+            final Verdict verdict = monitor.getVerdict(sessions[i]);
+
+            if (spa.accepts(w)) {
+                Assert.assertEquals(verdict, Verdict.ACCEPTED, w.toString());
+            } else if (verdict == Verdict.VIOLATED) {
+                // violations are detected no later than by the (non-pruning) streaming acceptor
+                final long position = monitor.getViolationPosition(sessions[i]);
+                Assert.assertTrue(position <= acceptor.accepts(w.iterator()).getFailingPosition(), w.toString());
+                Assert.assertNotEquals(spa.getState(w.prefix((int) position)), sink);
+            } else {
+                // the word can still be completed
+                Assert.assertEquals(verdict, Verdict.PENDING, w.toString());
+            }
+
+            monitor.closeSession(sessions[i]);
+        }
+
+        Assert.assertEquals(monitor.getNumOpenSessions(), 0);
+    }
+
+    @Test
+    public void testReduction() {
+        final SPA<?, Integer> reduced = SPAUtil.reduce(spa);
+
+        Assert.assertTrue(reduced.size() <= spa.size());
+
+        for (final Word<Integer> w : testWords) {
+            Assert.assertEquals(reduced.accepts(w), spa.accepts(w), w.toString());
+        }
+
+        // reducing is idempotent
+        Assert.assertEquals(SPAUtil.reduce(reduced).size(), reduced.size());
+    }
+
+    @Test
+    public void testReductionOfRedundantSPA() {
+        final SPAAlphabet<Character> alphabet = new DefaultSPAAlphabet<>(Alphabets.characters('a', 'b'),
+                                                                         Alphabets.characters('S', 'V'),
+                                                                         'R');
+        final Alphabet<Character> proceduralAlphabet = new SimpleAlphabet<>();
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+        proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+
+        // S: the call to U cannot terminate and the state reached by 'b' is dead
+        final CompactDFA<Character> s = new CompactDFA<>(proceduralAlphabet);
+        final int s0 = s.addIntInitialState(false);
+        final int s1 = s.addIntState(true);
+        final int s2 = s.addIntState(true);
+        final int s3 = s.addIntState(false);
+        s.setTransition(s0, (Character) 'a', s1);
+        s.setTransition(s0, (Character) 'T', s1);
+        s.setTransition(s0, (Character) 'U', s2);
+        s.setTransition(s1, (Character) 'b', s3);
+
+        // T: non-minimal representation of a+
+        final CompactDFA<Character> t = new CompactDFA<>(proceduralAlphabet);
+        final int t0 = t.addIntInitialState(false);
+        final int t1 = t.addIntState(true);
+        final int t2 = t.addIntState(true);
+        t.setTransition(t0, (Character) 'a', t1);
+        t.setTransition(t1, (Character) 'a', t2);
+        t.setTransition(t2, (Character) 'a', t1);
+
+        // U: cannot terminate
+        final CompactDFA<Character> u = new CompactDFA<>(proceduralAlphabet);
+        final int u0 = u.addIntInitialState(false);
+        u.setTransition(u0, (Character) 'a', u0);
+
+        // V: is never called
+        final CompactDFA<Character> v = new CompactDFA<>(proceduralAlphabet);
+        v.addIntInitialState(true);
+
+        final Map<Character, CompactDFA<Character>> procedures = new HashMap<>();
+        procedures.put('S', s);
+        procedures.put('T', t);
+        procedures.put('U', u);
+        procedures.put('V', v);
+
+        final SPA<?, Character> redundantSPA = new DefaultSPA<>(alphabet, 'S', procedures);
+        final SPA<?, Character> reduced = SPAUtil.reduce(redundantSPA);
+
+        Assert.assertEquals(reduced.getProcedures().keySet(), new HashSet<>(Arrays.asList('S', 'T')));
+        Assert.assertEquals(reduced.getProcedures().get('S').size(), 2);
+        Assert.assertEquals(reduced.getProcedures().get('T').size(), 2);
+
+        for (final List<Character> w : CollectionsUtil.allTuples(alphabet, 0, 6)) {
+            Assert.assertEquals(reduced.accepts(w), redundantSPA.accepts(w), w.toString());
+        }
+    }
+
+    @Test
+    public void testAnalysis() {
+        final SPAAnalysis<Integer> analysis = new SPAAnalysis<>(spa);
+        final SPAWordSampler<Integer> sampler = new SPAWordSampler<>(spa);
+        final Word<Integer> shortestWord = analysis.getShortestAcceptedWord();
+
+        Assert.assertFalse(analysis.isEmpty());
+        Assert.assertNotNull(shortestWord);
+        Assert.assertTrue(spa.accepts(shortestWord));
+        for (int length = 0; length < shortestWord.size(); length++) {
+            Assert.assertEquals(sampler.countAcceptedWords(length), BigInteger.ZERO);
+        }
+
+        final TransformationUtil<Integer> transformationUtil = new TransformationUtil<>(spa.getInputAlphabet());
+
+        for (final Integer p : spa.getInputAlphabet().getCallAlphabet()) {
+            final Word<Integer> ts = analysis.getShortestTerminatingSequence(p);
+            Assert.assertNotNull(ts);
+            Assert.assertEquals(ts.size(), analysis.getShortestTerminatingLength(p));
+            Assert.assertTrue(spa.getProcedures().get(p).accepts(transformationUtil.normalize(ts, 0)));
+        }
+
+        final SPAAlphabet<Character> alphabet = new DefaultSPAAlphabet<>(Alphabets.characters('a', 'b'),
+                                                                         Alphabets.characters('S', 'V'),
+                                                                         'R');
+        final Alphabet<Character> proceduralAlphabet = new SimpleAlphabet<>();
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+        proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+
+        // S: a | T | U
+        final CompactDFA<Character> s = new CompactDFA<>(proceduralAlphabet);
+        final int s0 = s.addIntInitialState(false);
+        final int s1 = s.addIntState(true);
+        s.setTransition(s0, (Character) 'T', s1);
+        s.setTransition(s0, (Character) 'U', s1);
+
+        // T: b T*
+        final CompactDFA<Character> t = new CompactDFA<>(proceduralAlphabet);
+        final int t0 = t.addIntInitialState(false);
+        final int t1 = t.addIntState(true);
+        t.setTransition(t0, (Character) 'b', t1);
+        t.setTransition(t1, (Character) 'T', t1);
+
+        // U: cannot terminate
+        final CompactDFA<Character> u = new CompactDFA<>(proceduralAlphabet);
+        final int u0 = u.addIntInitialState(false);
+        u.setTransition(u0, (Character) 'a', u0);
+
+        // V: is never called
+        final CompactDFA<Character> v = new CompactDFA<>(proceduralAlphabet);
+        v.addIntInitialState(true);
+
+        final Map<Character, CompactDFA<Character>> procedures = new HashMap<>();
+        procedures.put('S', s);
+        procedures.put('T', t);
+        procedures.put('U', u);
+        procedures.put('V', v);
+
+        final SPAAnalysis<Character> infinite = new SPAAnalysis<>(new DefaultSPA<>(alphabet, 'S', procedures));
+
+        Assert.assertEquals(infinite.getProductiveProcedures(), new HashSet<>(Arrays.asList('S', 'T', 'V')));
+        Assert.assertEquals(infinite.getReachableProcedures(), new HashSet<>(Arrays.asList('S', 'T')));
+        Assert.assertFalse(infinite.isEmpty());
+        Assert.assertFalse(infinite.isFinite());
+        Assert.assertEquals(infinite.getShortestAcceptedWord(), Word.fromCharSequence("STbRR"));
+        Assert.assertNull(infinite.getShortestTerminatingSequence('U'));
+
+        // without the recursion (and with an additional internal alternative), the language is finite
+        t.removeAllTransitions(t1);
+        s.setTransition(s0, (Character) 'a', s1);
+        final SPAAnalysis<Character> finite = new SPAAnalysis<>(new DefaultSPA<>(alphabet, 'S', procedures));
+
+        Assert.assertTrue(finite.isFinite());
+        Assert.assertEquals(finite.getShortestAcceptedWord(), Word.fromCharSequence("SaR"));
+
+        // without a terminating alternative, the language is empty
+        s.removeAllTransitions(s0);
+        s.setTransition(s0, (Character) 'U', s1);
+        final SPAAnalysis<Character> empty = new SPAAnalysis<>(new DefaultSPA<>(alphabet, 'S', procedures));
+
+        Assert.assertTrue(empty.isEmpty());
+        Assert.assertTrue(empty.isFinite());
+        Assert.assertTrue(empty.getReachableProcedures().isEmpty());
+        Assert.assertNull(empty.getShortestAcceptedWord());
+    }
+
+    @Test
+    public void testWordSampler() {
+        final Random random = new Random(42);
+        final SPAWordSampler<Integer> sampler = new SPAWordSampler<>(spa);
+
+        for (int i = 0; i < 100; i++) {
+            final Word<Integer> w = sampler.sample(random, 20);
+            Assert.assertNotNull(w);
+            Assert.assertEquals(w.size(), 20);
+            Assert.assertTrue(spa.accepts(w), w.toString());
+        }
+
+        // compare with a brute-force enumeration on a small SPA
+        final SPAAlphabet<Integer> alphabet =
+                new DefaultSPAAlphabet<>(Alphabets.integers(2, 3), Alphabets.integers(0, 1), 4);
+        final SPA<?, Integer> smallSPA = Generator.create(random, alphabet, 3);
+        final SPAWordSampler<Integer> smallSampler = new SPAWordSampler<>(smallSPA);
+
+        int sampledLength = -1;
+
+        for (int length = 0; length <= 8; length++) {
+            int count = 0;
+            for (final List<Integer> w : CollectionsUtil.allTuples(alphabet, length)) {
+                if (smallSPA.accepts(w)) {
+                    count++;
+                }
+            }
+
+            Assert.assertEquals(smallSampler.countAcceptedWords(length), BigInteger.valueOf(count));
+
+            if (count == 0) {
+                Assert.assertNull(smallSampler.sample(random, length));
+            } else if (count <= 20) {
+                sampledLength = length;
+            }
+        }
+
+        Assert.assertTrue(sampledLength > 0);
+
+        // every accepted word should be sampled with (roughly) the same frequency
+        final int count = smallSampler.countAcceptedWords(sampledLength).intValue();
+        final int samplesPerWord = 500;
+        final Map<Word<Integer>, Integer> frequencies = new HashMap<>();
+
+        for (int i = 0; i < count * samplesPerWord; i++) {
+            frequencies.merge(smallSampler.sample(random, sampledLength), 1, Integer::sum);
+        }
+
+        Assert.assertEquals(frequencies.size(), count);
+        for (final Map.Entry<Word<Integer>, Integer> e : frequencies.entrySet()) {
+            Assert.assertTrue(smallSPA.accepts(e.getKey()));
+            Assert.assertTrue(Math.abs(e.getValue() - samplesPerWord) < samplesPerWord / 4, e.toString());
+        }
+
+        // an initial procedure without a procedural automaton accepts nothing
+        final SPA<?, Integer> undefinedSPA = new DefaultSPA<>(alphabet, 0, new HashMap<Integer, CompactDFA<Integer>>());
+        final SPAWordSampler<Integer> undefinedSampler = new SPAWordSampler<>(undefinedSPA);
+        Assert.assertEquals(undefinedSampler.countAcceptedWords(4), BigInteger.ZERO);
+        Assert.assertNull(undefinedSampler.sample(random, 4));
+    }
+
+    @Test
+    public void testConfigurationExplorer() {
+        final Random random = new Random(42);
+        final SPAAlphabet<Integer> alphabet =
+                new DefaultSPAAlphabet<>(Alphabets.integers(2, 3), Alphabets.integers(0, 1), 4);
+        final SPA<?, Integer> smallSPA = Generator.create(random, alphabet, 3);
+
+        final ConfigurationExplorer<Integer> sequential = new ConfigurationExplorer<>(smallSPA, Runnable::run, 1);
+
+        boolean accepted = false;
+
+        for (int length = 0; length <= 8; length++) {
+            for (final List<Integer> w : CollectionsUtil.allTuples(alphabet, length)) {
+                accepted |= smallSPA.accepts(w);
+            }
+
+            final ConfigurationExplorer.Result result = sequential.explore(length, length + 1, Long.MAX_VALUE, null);
+            Assert.assertEquals(result.isAcceptingReachable(), accepted);
+            Assert.assertFalse(result.isTruncated());
+        }
+
+        // the explored configuration space does not depend on the parallelism
+        final ConfigurationExplorer<Integer> explorer = new ConfigurationExplorer<>(smallSPA);
+        final ConfigurationExplorer.Result expected = sequential.explore(40, 7, Long.MAX_VALUE, null);
+        final ConfigurationExplorer.Result actual = explorer.explore(40, 7, Long.MAX_VALUE, null);
+
+        Assert.assertEquals(actual.getNumConfigurations(), expected.getNumConfigurations());
+        Assert.assertEquals(actual.getNumStacks(), expected.getNumStacks());
+        Assert.assertEquals(actual.isAcceptingReachable(), expected.isAcceptingReachable());
+        Assert.assertTrue(expected.getNumStacks() > 0);
+
+        // the budget is respected
+        final ConfigurationExplorer.Result truncated = explorer.explore(40, 7, 100, null);
+        Assert.assertTrue(truncated.isTruncated());
+        Assert.assertTrue(truncated.getNumConfigurations() <= 100);
+
+        // nested configurations are found at the shortest length
+        final ConfigurationExplorer.Result target = explorer.explore(40, 7, Long.MAX_VALUE, (p, s, d) -> d == 3);
+        Assert.assertTrue(target.isTargetReached());
+        Assert.assertTrue(target.getExploredLength() >= 3);
+        Assert.assertFalse(explorer.explore(40, 2, Long.MAX_VALUE, (p, s, d) -> d == 3).isTargetReached());
+    }
+
+    @Test
+    public void testFlattening() {
+        final SPAAlphabet<Integer> alphabet = spa.getInputAlphabet();
+        final SPA<?, Integer> reduced = SPAUtil.reduce(spa);
+        int previousSize = 0;
+
+        for (int maxDepth = 1; maxDepth <= 3; maxDepth++) {
+            final CompactDFA<Integer> dfa = SPAUtil.flatten(spa, maxDepth);
+
+            for (final Word<Integer> w : testWords) {
+                final boolean expected = spa.accepts(w) && getNestingDepth(alphabet, w) <= maxDepth;
+                Assert.assertEquals(dfa.accepts(w), expected, w.toString());
+            }
+
+            Assert.assertTrue(dfa.size() >= previousSize);
+            Assert.assertTrue(Automata.testEquivalence(dfa, SPAUtil.flatten(reduced, maxDepth), alphabet));
+            previousSize = dfa.size();
+        }
+
+        Assert.assertEquals(SPAUtil.flatten(spa, 0).size(), 1);
+
+        // an initial procedure without a procedural automaton accepts nothing
+        final SPA<?, Integer> undefinedSPA = new DefaultSPA<>(alphabet, 0, new HashMap<Integer, CompactDFA<Integer>>());
+        Assert.assertEquals(SPAUtil.flatten(undefinedSPA, 2).size(), 1);
+    }
+
+    private static <I> int getNestingDepth(SPAAlphabet<I> alphabet, Word<I> word) {
+        int depth = 0;
+        int maxDepth = 0;
+
+        for (final I i : word) {
+            if (alphabet.isCallSymbol(i)) {
+                maxDepth = Math.max(maxDepth, ++depth);
+            } else if (alphabet.isReturnSymbol(i)) {
+                depth--;
+            }
+        }
+
+        return maxDepth;
+    }
+
+    private static <S> CompactDFA<Integer> copy(DFA<S, Integer> dfa,
+                                                Alphabet<Integer> inputs,
+                                                boolean keepAcceptance) {
+        final CompactDFA<Integer> result = new CompactDFA<>(inputs);
+        AutomatonLowLevelCopy.copy(AutomatonCopyMethod.STATE_BY_STATE,
+                                   dfa,
+                                   inputs,
+                                   result,
+                                   acc -> keepAcceptance && acc,
+                                   tp -> null);
+        return result;
+    }
+
+    private static <S, I> boolean acceptsByTransitions(SPA<S, I> spa, Word<I> input) {
+        return spa.isAccepting(spa.getState(input));
+    }
+}
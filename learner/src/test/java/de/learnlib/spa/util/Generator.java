@@ -14,17 +14,25 @@
  */
 package de.learnlib.spa.util;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
 import com.google.common.collect.Maps;
+import de.learnlib.spa.TransformationUtil;
 import de.learnlib.spa.api.SPA;
 import de.learnlib.spa.api.SPAAlphabet;
 import de.learnlib.spa.impl.DefaultSPA;
 import net.automatalib.automata.fsa.DFA;
 import net.automatalib.automata.fsa.impl.compact.CompactDFA;
+import net.automatalib.commons.util.Pair;
+import net.automatalib.util.automata.Automata;
 import net.automatalib.util.automata.random.RandomAutomata;
 import net.automatalib.words.Alphabet;
+import net.automatalib.words.Word;
+import net.automatalib.words.WordBuilder;
 import net.automatalib.words.impl.SimpleAlphabet;
 
 public class Generator {
@@ -47,4 +55,57 @@ public class Generator {
                                 dfas);
     }
 
-}
\ No newline at end of file
+    /**
+     * Creates a set of test words for the given SPA. The words consist of embedded transition covers of each procedure
+     * (which yields both accepted and rejected words of various nesting depths), as well as randomly mutated versions
+     * of these words.
+     */
+    public static <I> List<Word<I>> createTestWords(Random random, SPA<?, I> spa, int numMutations) {
+
+        final SPAAlphabet<I> alphabet = spa.getInputAlphabet();
+        final TransformationUtil<I> transformationUtil = new TransformationUtil<>(alphabet);
+
+        final Alphabet<I> proceduralAlphabet = new SimpleAlphabet<>();
+        proceduralAlphabet.addAll(alphabet.getCallAlphabet());
+        proceduralAlphabet.addAll(alphabet.getInternalAlphabet());
+
+        final Map<I, Word<I>> ts =
+                Util.computeTerminatingSequences(alphabet, spa.getInitialProcedure(), spa.getProcedures());
+        final Pair<Map<I, Word<I>>, Map<I, Word<I>>> ars = Util.computeAccessAndReturnSequences(alphabet,
+                                                                                             spa.getInitialProcedure(),
+                                                                                             proceduralAlphabet,
+                                                                                             spa.getProcedures(),
+                                                                                             ts,
+                                                                                             transformationUtil);
+
+        final List<Word<I>> result = new ArrayList<>();
+
+        for (final Map.Entry<I, DFA<?, I>> e : spa.getProcedures().entrySet()) {
+            final I procedure = e.getKey();
+
+            for (final Word<I> w : Automata.transitionCover(e.getValue(), proceduralAlphabet)) {
+                final WordBuilder<I> wb = new WordBuilder<>();
+                wb.append(ars.getFirst().get(procedure));
+                wb.append(procedure);
+                wb.append(transformationUtil.expand(w, ts::get));
+                wb.append(alphabet.getReturnSymbol());
+                wb.append(ars.getSecond().get(procedure));
+                result.add(wb.toWord());
+            }
+        }
+
+        final int numEmbedded = result.size();
+
+        for (int i = 0; i < numMutations; i++) {
+            final Word<I> w = result.get(random.nextInt(numEmbedded));
+            final int idx = random.nextInt(w.size());
+            final I sym = alphabet.getSymbol(random.nextInt(alphabet.size()));
+            result.add(w.prefix(idx).append(sym).concat(w.subWord(idx + 1)));
+        }
+
+        Collections.shuffle(result, random);
+
+        return result;
+    }
+
+}